@@ -0,0 +1,205 @@
+import java.util.Arrays;
+
+// ancestor-distance labels of a DAG: for each vertex v, every vertex reachable from v together
+// with its distance from v, sorted by ancestor id. the shortest ancestral path of v and w is then
+// found by merging the two labels instead of searching the graph. labels longer than the cap are
+// not stored, and queries that touch such a vertex report NOT_INDEXED
+class AncestorLabels {
+	public static final long NOT_INDEXED = Long.MIN_VALUE;
+	private static final int NO_LABEL = -1;
+
+	// label of v: pairs (ancestor, distance) at slab[2 * start[v]] .. , size[v] pairs long;
+	// size[v] is NO_LABEL for vertices whose label exceeds the cap
+	private final int[] start;
+	private final int[] size;
+	private final int[] slab;
+	private final int unlabeled;
+
+	private AncestorLabels(int[] start, int[] size, int[] slab, int unlabeled) {
+		this.start = start;
+		this.size = size;
+		this.slab = slab;
+		this.unlabeled = unlabeled;
+	}
+
+	// requires G to be acyclic
+	public AncestorLabels(CompactDigraph G, int maxLabelSize) {
+		if (maxLabelSize < 1) {
+			throw new IllegalArgumentException("label size cap must be positive");
+		}
+		int V = G.V();
+		start = new int[V];
+		size = new int[V];
+		int[] labels = new int[2 * V];
+		int used = 0;
+		int skipped = 0;
+
+		// visit vertices after all of their hypernyms: Kahn's algorithm over the reverse graph
+		CompactDigraph reverse = G.reverse();
+		int[] pending = new int[V];
+		int[] queue = new int[V];
+		int head = 0, tail = 0;
+		for (int v = 0; v < V; v++) {
+			pending[v] = G.outdegree(v);
+			if (pending[v] == 0) {
+				queue[tail++] = v;
+			}
+		}
+		int[] merged = new int[2 * maxLabelSize + 2];
+		int[] scratch = new int[2 * maxLabelSize + 2];
+		while (head < tail) {
+			int v = queue[head++];
+			for (int e = reverse.adjStart(v); e < reverse.adjEnd(v); e++) {
+				int u = reverse.target(e);
+				if (--pending[u] == 0) {
+					queue[tail++] = u;
+				}
+			}
+
+			// v's label is (v, 0) merged with the labels of its hypernyms, one step further away
+			merged[0] = v;
+			merged[1] = 0;
+			int n = 1;
+			for (int e = G.adjStart(v); e < G.adjEnd(v) && n != NO_LABEL; e++) {
+				int p = G.target(e);
+				if (size[p] == NO_LABEL) {
+					n = NO_LABEL;
+					break;
+				}
+				n = merge(merged, n, labels, start[p], size[p], scratch, maxLabelSize);
+				int[] swap = merged;
+				merged = scratch;
+				scratch = swap;
+			}
+			if (n == NO_LABEL) {
+				size[v] = NO_LABEL;
+				skipped++;
+				continue;
+			}
+			if (2 * (used + n) > labels.length) {
+				labels = Arrays.copyOf(labels, Math.max(2 * labels.length, 2 * (used + n)));
+			}
+			System.arraycopy(merged, 0, labels, 2 * used, 2 * n);
+			start[v] = used;
+			size[v] = n;
+			used += n;
+		}
+		if (tail != V) {
+			throw new IllegalArgumentException("Not DAG- graph has cycle!");
+		}
+		slab = Arrays.copyOf(labels, 2 * used);
+		unlabeled = skipped;
+	}
+
+	// merges the n pairs in a with the label at labels[2 * from] (distances + 1) into out,
+	// keeping the smaller distance per ancestor; NO_LABEL if the result exceeds the cap
+	private static int merge(int[] a, int n, int[] labels, int from, int m, int[] out, int cap) {
+		int i = 0, j = 0, k = 0;
+		while (i < n || j < m) {
+			int ancestor, dist;
+			int ai = i < n ? a[2 * i] : Integer.MAX_VALUE;
+			int bj = j < m ? labels[2 * (from + j)] : Integer.MAX_VALUE;
+			if (ai < bj) {
+				ancestor = ai;
+				dist = a[2 * i + 1];
+				i++;
+			} else if (bj < ai) {
+				ancestor = bj;
+				dist = labels[2 * (from + j) + 1] + 1;
+				j++;
+			} else {
+				ancestor = ai;
+				dist = Math.min(a[2 * i + 1], labels[2 * (from + j) + 1] + 1);
+				i++;
+				j++;
+			}
+			if (k == cap) {
+				return NO_LABEL;
+			}
+			out[2 * k] = ancestor;
+			out[2 * k + 1] = dist;
+			k++;
+		}
+		return k;
+	}
+
+	// packed SAP result for v and w, or NOT_INDEXED if either has no label
+	public long query(int v, int w) {
+		if (size[v] == NO_LABEL || size[w] == NO_LABEL) {
+			return NOT_INDEXED;
+		}
+		long best = SAP.pack(Integer.MAX_VALUE, -1);
+		return closest(v, w, best);
+	}
+
+	// packed SAP result for the closest pair of vertices in v[vFrom .. vTo - 1] and
+	// w[wFrom .. wTo - 1], or NOT_INDEXED
+	public long query(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+		for (int i = vFrom; i < vTo; i++) {
+			if (size[v[i]] == NO_LABEL) {
+				return NOT_INDEXED;
+			}
+		}
+		for (int i = wFrom; i < wTo; i++) {
+			if (size[w[i]] == NO_LABEL) {
+				return NOT_INDEXED;
+			}
+		}
+		long best = SAP.pack(Integer.MAX_VALUE, -1);
+		for (int i = vFrom; i < vTo; i++) {
+			for (int j = wFrom; j < wTo; j++) {
+				best = closest(v[i], w[j], best);
+			}
+		}
+		return best;
+	}
+
+	// the better of best and the closest common ancestor of v and w
+	private long closest(int v, int w, long best) {
+		int i = 2 * start[v], iEnd = 2 * (start[v] + size[v]);
+		int j = 2 * start[w], jEnd = 2 * (start[w] + size[w]);
+		while (i < iEnd && j < jEnd) {
+			int a = slab[i], b = slab[j];
+			if (a < b) {
+				i += 2;
+			} else if (b < a) {
+				j += 2;
+			} else {
+				int dist = slab[i + 1] + slab[j + 1];
+				if (dist < (int) (best >>> 32)) {
+					best = SAP.pack(dist, a);
+				}
+				i += 2;
+				j += 2;
+			}
+		}
+		return best;
+	}
+
+	// copy of this index for a graph grown to V vertices, in which the labels of affected
+	// vertices, and of the new vertices, are dropped. the label slab is shared
+	public AncestorLabels without(boolean[] affected, int V) {
+		int[] newStart = Arrays.copyOf(start, V);
+		int[] newSize = Arrays.copyOf(size, V);
+		int newUnlabeled = 0;
+		for (int v = 0; v < V; v++) {
+			if (v >= size.length || (v < affected.length && affected[v])) {
+				newSize[v] = NO_LABEL;
+			}
+			if (newSize[v] == NO_LABEL) {
+				newUnlabeled++;
+			}
+		}
+		return new AncestorLabels(newStart, newSize, slab, newUnlabeled);
+	}
+
+	// number of vertices without a label: over the cap, or dropped by an update
+	public int unlabeled() {
+		return unlabeled;
+	}
+
+	// approximate heap footprint of the index in bytes
+	public long bytes() {
+		return 4L * ((long) start.length + size.length + slab.length) + 3 * 16;
+	}
+}
@@ -1,5 +1,6 @@
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -9,16 +10,44 @@ import java.util.Set;
 
 public class BaseballElimination {
 	private List<String> teams;
+	private Map<String, Integer> teamIndex = new HashMap<String, Integer>();
 	private int[] w;
 	private int[] l;
 	private int[] r;
-	private Map<Match, Integer> remainingMatches = new HashMap<Match, Integer>();
+	// remaining games between teams i < j, at games[pair(i, j, numberOfTeams())]
+	private int[] games;
+	private final FlowAlgorithm algorithm;
+	// elimination result of each team, computed once on demand: the team indices of a subset
+	// that eliminates it, sorted, or null if it is not eliminated
+	private boolean[] analyzed;
+	private int[][] certificates;
+	// with DINIC, the max flow of a team's last solve, kept while the team is not eliminated and
+	// its result has not since been decided without a solve: (game vertex, flow to its first
+	// team, flow to its second team) for each game vertex that carries flow
+	private int[][] warmFlows;
+
+	// max-flow solver used for the elimination networks
+	public enum FlowAlgorithm {
+		// algs4 FordFulkerson on a FlowNetwork with double capacities
+		FORD_FULKERSON,
+		// Dinic's algorithm on int arrays, see IntMaxFlow; faster for large divisions
+		DINIC
+	}
 
 	// create a baseball division from given filename in format specified below
 	public BaseballElimination(String filename) {
+		this(filename, FlowAlgorithm.FORD_FULKERSON);
+	}
+
+	public BaseballElimination(String filename, FlowAlgorithm algorithm) {
+		if (algorithm == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		this.algorithm = algorithm;
 		In inFile = new In(new File(filename));
 		int numTeams = inFile.readInt();
 		teams = new ArrayList<String>(numTeams);
+		games = new int[numTeams * (numTeams - 1) / 2];
 		w = new int[numTeams];
 		l = new int[numTeams];
 		r = new int[numTeams];
@@ -26,7 +55,9 @@ public class BaseballElimination {
 		int countLn = 0;
 		while (true) {
 			try {
-				teams.add(inFile.readString());
+				String team = inFile.readString();
+				teams.add(team);
+				teamIndex.put(team, countLn);
 			} catch (NoSuchElementException e) {
 				break;
 			}
@@ -40,17 +71,13 @@ public class BaseballElimination {
 					inFile.readInt();
 					continue;
 				}
-				// only store non-zero matches
-				int num = inFile.readInt();
-				if (num == 0) {
-					continue;
-				} else {
-					remainingMatches.put(new Match(countLn, i), num);
-				}
+				games[pair(countLn, i, numTeams)] = inFile.readInt();
 			}
 			countLn++;
 		}
-
+		analyzed = new boolean[numTeams];
+		certificates = new int[numTeams][];
+		warmFlows = new int[numTeams][];
 	}
 
 	// number of teams
@@ -65,80 +92,343 @@ public class BaseballElimination {
 
 	// number of wins for given team
 	public int wins(String team) throws IllegalArgumentException {
-		int idx = teams.indexOf(team);
+		int idx = indexOf(team);
 		validateArgs(idx);
 		return w[idx];
 	}
 
 	// number of losses for given team
 	public int losses(String team) {
-		int idx = teams.indexOf(team);
+		int idx = indexOf(team);
 		validateArgs(idx);
 		return l[idx];
 	}
 
 	// number of remaining games for given team
 	public int remaining(String team) {
-		int idx = teams.indexOf(team);
+		int idx = indexOf(team);
 		validateArgs(idx);
 		return r[idx];
 	}
 
 	// number of remaining games between team1 and team2
 	public int against(String team1, String team2) {
-		int idx1 = teams.indexOf(team1);
-		int idx2 = teams.indexOf(team2);
+		int idx1 = indexOf(team1);
+		int idx2 = indexOf(team2);
 		validateArgs(idx1, idx2);
 
 		// cannot match with self
 		if (idx1==idx2){
 			return 0;
 		}
-		
-		// swap and put smaller idx in idx1
-		if (idx2 < idx1) {
-			int temp = idx1;
-			idx1 = idx2;
-			idx2 = temp;
-		}
+		return games[pair(Math.min(idx1, idx2), Math.max(idx1, idx2), teams.size())];
+	}
 
-		Match match = new Match(idx1, idx2);
-		try {
-			return remainingMatches.get(match);
-		} catch (NullPointerException npe) {
-			return 0;
+	// index of the pair of teams i < j among all pairs of n teams, in the order
+	// (0, 1), (0, 2) .. (0, n - 1), (1, 2) ..; the pairs starting with i begin at i * (2n - i - 1) / 2
+	private static int pair(int i, int j, int n) {
+		return i * (2 * n - i - 1) / 2 + j - i - 1;
+	}
+
+	// first team of the pair with index k among the pairs of n teams: the largest i with
+	// pair(i, i + 1, n) <= k, from the quadratic formula and corrected for rounding
+	private static int pairFirst(int k, int n) {
+		double b = 2 * n - 1;
+		int i = (int) ((b - Math.sqrt(b * b - 8.0 * k)) / 2);
+		while (i > 0 && pair(i, i + 1, n) > k) {
+			i--;
 		}
+		while (i + 2 < n && pair(i + 1, i + 2, n) <= k) {
+			i++;
+		}
+		return i;
+	}
+
+	// second team of the pair with index k whose first team is i
+	private static int pairSecond(int k, int i, int n) {
+		return k - pair(i, i + 1, n) + i + 1;
+	}
+
+	// division index of the team numbered t in the network of teamIdx, which leaves teamIdx out
+	private static int withoutTeam(int t, int teamIdx) {
+		return t >= teamIdx ? t + 1 : t;
+	}
+
+	private int indexOf(String team) {
+		Integer idx = teamIndex.get(team);
+		return idx == null ? -1 : idx;
 	}
 
 	// is given team eliminated?
 	public boolean isEliminated(String team) {
-		int teamIdx = teams.indexOf(team);
+		int teamIdx = indexOf(team);
 		validateArgs(teamIdx);
 
 		// boundary case: no or only 1 team
 		if (teams.size() <= 1) {
 			return false;
 		}
+		return certificate(teamIdx) != null;
+	}
+
+	// all eliminated teams, in file order. a team is eliminated exactly when its maximum wins
+	// are below a threshold (Gusfield and Martel), so the threshold is found by binary search
+	// over the teams sorted by maximum wins, and the other teams mostly reuse those results
+	public Iterable<String> eliminatedTeams() {
+		List<String> eliminated = new ArrayList<String>();
+		if (teams.size() <= 1) {
+			return eliminated;
+		}
+		// maximum wins in the high half, team index in the low half, so that sorting the keys
+		// sorts the teams by maximum wins
+		long[] order = new long[teams.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = (long) (w[i] + r[i]) << 32 | i;
+		}
+		Arrays.sort(order);
+		int lo = 0;
+		int hi = order.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (certificate((int) order[mid]) != null) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		// from the most to the fewest maximum wins, so that every certificate found can be
+		// reused by the teams below it
+		for (int i = order.length - 1; i >= 0; i--) {
+			certificate((int) order[i]);
+		}
+		for (int i = 0; i < teams.size(); i++) {
+			if (certificates[i] != null) {
+				eliminated.add(teams.get(i));
+			}
+		}
+		return eliminated;
+	}
+
+	private int[] certificate(int teamIdx) {
+		if (!analyzed[teamIdx]) {
+			certificates[teamIdx] = computeCertificate(teamIdx);
+			analyzed[teamIdx] = true;
+			if (certificates[teamIdx] != null) {
+				// never solved again
+				warmFlows[teamIdx] = null;
+			}
+		}
+		return certificates[teamIdx];
+	}
+
+	// record that winner beat loser in one of their remaining games. a team that was eliminated
+	// stays eliminated, with the same certificate: the game moves a win into or within its
+	// subset R, or out of it entirely, and cannot raise the team's maximum wins. only the
+	// other teams are checked again, on demand, starting from their last flow
+	public void recordGame(String winner, String loser) {
+		int winnerIdx = indexOf(winner);
+		int loserIdx = indexOf(loser);
+		validateArgs(winnerIdx, loserIdx);
+		if (against(winner, loser) == 0) {
+			throw new IllegalArgumentException("no remaining game between " + winner + " and " + loser);
+		}
+		games[pair(Math.min(winnerIdx, loserIdx), Math.max(winnerIdx, loserIdx), teams.size())]--;
+		w[winnerIdx]++;
+		l[loserIdx]++;
+		r[winnerIdx]--;
+		r[loserIdx]--;
+		for (int i = 0; i < teams.size(); i++) {
+			if (certificates[i] == null) {
+				analyzed[i] = false;
+			}
+		}
+	}
+
+	// subset of teams that eliminates teamIdx, or null; the subset is either every team with
+	// more wins than teamIdx can reach, or the teams of the games on the source side of the min cut
+	private int[] computeCertificate(int teamIdx) {
+		// only a solve keeps warm state; a result found without one leaves it stale
+		int[] warm = warmFlows[teamIdx];
+		warmFlows[teamIdx] = null;
 
 		// trivial reasons
 		int maxWins = w[teamIdx] + r[teamIdx];
+		int count = 0;
 		for (int win : w) {
 			if (win > maxWins) {
-				return true;
+				count++;
+			}
+		}
+		if (count > 0) {
+			int[] certificate = new int[count];
+			count = 0;
+			for (int i = 0; i < w.length; i++) {
+				if (w[i] > maxWins) {
+					certificate[count++] = i;
+				}
+			}
+			return certificate;
+		}
+
+		// results of other teams: a team that can reach at least as many wins as a team that is
+		// not eliminated is not eliminated either, and a subset R that eliminates a team with at
+		// least as many maximum wins eliminates every team outside R, since R's average wins
+		// then exceed that team's maximum too
+		for (int i = 0; i < teams.size(); i++) {
+			if (!analyzed[i]) {
+				continue;
+			}
+			if (certificates[i] == null && w[i] + r[i] <= maxWins) {
+				return null;
+			}
+			if (certificates[i] != null && w[i] + r[i] >= maxWins
+					&& Arrays.binarySearch(certificates[i], teamIdx) < 0) {
+				return certificates[i];
 			}
 		}
 
 		// flow diagram
-		FlowNetwork fn = constructFlowNetwork(teamIdx, maxWins);
-		FordFulkerson ff = new FordFulkerson(fn, 0, fn.V() - 1);
+		boolean[] inCut = minCut(teamIdx, maxWins, warm);
 		int numTeams = teams.size() - 1;
 		int nGameVertices = numTeams * (numTeams - 1) / 2;
+		boolean[] inR = new boolean[teams.size()];
 		for (int i = 1; i <= nGameVertices; i++) {
-			if (ff.inCut(i)) {
-				return true;
+			if (inCut[i]) {
+				// game vertex i is the pair i - 1 of the other teams
+				int t1 = pairFirst(i - 1, numTeams);
+				int t2 = pairSecond(i - 1, t1, numTeams);
+				inR[withoutTeam(t1, teamIdx)] = true;
+				inR[withoutTeam(t2, teamIdx)] = true;
+			}
+		}
+		for (boolean b : inR) {
+			if (b) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return null;
+		}
+		int[] certificate = new int[count];
+		count = 0;
+		for (int i = 0; i < inR.length; i++) {
+			if (inR[i]) {
+				certificate[count++] = i;
+			}
+		}
+		return certificate;
+	}
+
+	// source side of the min cut of the flow network for teamIdx, by vertex. with DINIC, the
+	// solve starts from the warm flow, if any, and leaves its own flow in warmFlows
+	private boolean[] minCut(int teamIdx, int maxWins, int[] warm) {
+		boolean[] inCut;
+		if (algorithm == FlowAlgorithm.FORD_FULKERSON) {
+			FlowNetwork fn = constructFlowNetwork(teamIdx, maxWins);
+			FordFulkerson ff = new FordFulkerson(fn, 0, fn.V() - 1);
+			inCut = new boolean[fn.V()];
+			for (int v = 0; v < fn.V(); v++) {
+				inCut[v] = ff.inCut(v);
+			}
+		} else {
+			// flow of the team's last solve, unpacked for this solve only; all zero for a cold start
+			int numTeams = teams.size() - 1;
+			int[] flows = new int[numTeams * (numTeams - 1)];
+			if (warm != null) {
+				for (int k = 0; k < warm.length; k += 3) {
+					flows[2 * warm[k] - 2] = warm[k + 1];
+					flows[2 * warm[k] - 1] = warm[k + 2];
+				}
+			}
+			int[] gameEdges = new int[flows.length / 2 + 1];
+			IntMaxFlow flow = constructIntFlowNetwork(teamIdx, maxWins, flows, gameEdges);
+			flow.maxFlow(0, flow.V() - 1);
+			inCut = new boolean[flow.V()];
+			for (int v = 0; v < flow.V(); v++) {
+				inCut[v] = flow.inCut(v);
+			}
+			int carrying = 0;
+			for (int i = 1; i < gameEdges.length; i++) {
+				if (gameEdges[i] != -1 && flow.flow(gameEdges[i]) + flow.flow(gameEdges[i] + 2) > 0) {
+					carrying++;
+				}
+			}
+			warm = new int[3 * carrying];
+			carrying = 0;
+			for (int i = 1; i < gameEdges.length; i++) {
+				if (gameEdges[i] != -1 && flow.flow(gameEdges[i]) + flow.flow(gameEdges[i] + 2) > 0) {
+					warm[carrying++] = i;
+					warm[carrying++] = flow.flow(gameEdges[i]);
+					warm[carrying++] = flow.flow(gameEdges[i] + 2);
+				}
 			}
+			warmFlows[teamIdx] = warm;
 		}
-		return false;
+		return inCut;
+	}
+
+	// the network of constructFlowNetwork for IntMaxFlow, carrying the given flow: game vertex i
+	// sends flows[2i - 2] to its first team and flows[2i - 1] to its second. the flow is first cut
+	// back wherever games were played or a sink capacity dropped since it was computed, and
+	// gameEdges[i] is set to the index of game i's edge to its first team, -1 if it has none.
+	// game vertices without remaining games get no edges at all, since no flow can pass them
+	private IntMaxFlow constructIntFlowNetwork(int teamIdx, int maxWins, int[] flows, int[] gameEdges) {
+		int numTeams = teams.size() - 1;
+		int nGameVertices = numTeams * (numTeams - 1) / 2;
+		int v = 1 + nGameVertices + numTeams + 1; // s + 1stLayer + 2ndLayer + t
+		IntMaxFlow flow = new IntMaxFlow(v);
+
+		// game vertex i is the game between teams first[i] and second[i], numbered without teamIdx
+		int[] first = new int[nGameVertices + 1];
+		int[] second = new int[nGameVertices + 1];
+		int[] games = new int[nGameVertices + 1];
+		int i = 1;
+		for (int t1 = 0; t1 < numTeams; t1++) {
+			for (int t2 = t1 + 1; t2 < numTeams; t2++) {
+				first[i] = t1;
+				second[i] = t2;
+				games[i] = this.games[pair(withoutTeam(t1, teamIdx), withoutTeam(t2, teamIdx), teams.size())];
+				i++;
+			}
+		}
+
+		// team vertex t may take in at most maxWins - w of its team
+		int[] capacity = new int[numTeams];
+		for (int t = 0; t < numTeams; t++) {
+			capacity[t] = maxWins - w[withoutTeam(t, teamIdx)];
+		}
+		int[] inflow = new int[numTeams];
+		for (i = 1; i <= nGameVertices; i++) {
+			int excess = flows[2 * i - 2] + flows[2 * i - 1] - games[i];
+			if (excess > 0) {
+				int cut = Math.min(excess, flows[2 * i - 1]);
+				flows[2 * i - 1] -= cut;
+				flows[2 * i - 2] -= excess - cut;
+			}
+			inflow[first[i]] += flows[2 * i - 2];
+			inflow[second[i]] += flows[2 * i - 1];
+		}
+		for (i = 1; i <= nGameVertices; i++) {
+			int cut = Math.min(Math.max(inflow[first[i]] - capacity[first[i]], 0), flows[2 * i - 2]);
+			flows[2 * i - 2] -= cut;
+			inflow[first[i]] -= cut;
+			cut = Math.min(Math.max(inflow[second[i]] - capacity[second[i]], 0), flows[2 * i - 1]);
+			flows[2 * i - 1] -= cut;
+			inflow[second[i]] -= cut;
+		}
+
+		for (i = 1; i <= nGameVertices; i++) {
+			gameEdges[i] = -1;
+			if (games[i] > 0) {
+				flow.addEdge(0, i, games[i], flows[2 * i - 2] + flows[2 * i - 1]);
+				gameEdges[i] = flow.addEdge(i, nGameVertices + first[i] + 1, IntMaxFlow.INFINITE, flows[2 * i - 2]);
+				flow.addEdge(i, nGameVertices + second[i] + 1, IntMaxFlow.INFINITE, flows[2 * i - 1]);
+			}
+		}
+		for (int t = 0; t < numTeams; t++) {
+			flow.addEdge(nGameVertices + t + 1, v - 1, capacity[t], inflow[t]);
+		}
+		return flow;
 	}
 
 	private FlowNetwork constructFlowNetwork(int teamIdx, int maxWins) {
@@ -148,40 +438,26 @@ public class BaseballElimination {
 		int v = 1 + nGameVertices + numTeams + 1; // s + 1stLayer + 2ndLayer + t
 		FlowNetwork fn = new FlowNetwork(v);
 
-		int t1 = 0;
-		int t2 = 1;
-		for (int i = 1; i <= nGameVertices; i++) {
-			// get capacity
-			int t11 = t1 >= teamIdx ? t1 + 1 : t1;
-			int t12 = t2 >= teamIdx ? t2 + 1 : t2;
-			Integer num = remainingMatches.get(new Match(t11, t12));
-
-			// s -> gameVertices: how many remaining matches
-			if (num != null) {
-				fn.addEdge(new FlowEdge(0, i, num));
-			}
+		for (int t1 = 0; t1 < numTeams; t1++) {
+			for (int t2 = t1 + 1; t2 < numTeams; t2++) {
+				int i = 1 + pair(t1, t2, numTeams);
+				// get capacity
+				int num = games[pair(withoutTeam(t1, teamIdx), withoutTeam(t2, teamIdx), teams.size())];
 
-			// gameVertices -> teamVertices: infinite capacity
-			fn.addEdge(new FlowEdge(i, nGameVertices + t1 + 1, Double.POSITIVE_INFINITY));
-			fn.addEdge(new FlowEdge(i, nGameVertices + t2 + 1, Double.POSITIVE_INFINITY));
+				// s -> gameVertices: how many remaining matches
+				if (num != 0) {
+					fn.addEdge(new FlowEdge(0, i, num));
+				}
 
-			// update team 1 and team 2
-			if (t2 == numTeams - 1) {
-				t1++;
-				t2 = t1 + 1;
-			} else {
-				t2++;
+				// gameVertices -> teamVertices: infinite capacity
+				fn.addEdge(new FlowEdge(i, nGameVertices + t1 + 1, Double.POSITIVE_INFINITY));
+				fn.addEdge(new FlowEdge(i, nGameVertices + t2 + 1, Double.POSITIVE_INFINITY));
 			}
 		}
 
-		t1 = 0;
-		for (int i = nGameVertices + 1; i < v - 1; i++) {
-			if (t1 == teamIdx) {
-				t1++;
-			}
-			int maxWinsRemainingT1 = maxWins - w[t1];
-			fn.addEdge(new FlowEdge(i, v - 1, (double) maxWinsRemainingT1));
-			t1++;
+		for (int t = 0; t < numTeams; t++) {
+			int maxWinsRemainingT1 = maxWins - w[withoutTeam(t, teamIdx)];
+			fn.addEdge(new FlowEdge(nGameVertices + t + 1, v - 1, (double) maxWinsRemainingT1));
 		}
 
 		return fn;
@@ -189,7 +465,7 @@ public class BaseballElimination {
 
 	// subset R of teams that eliminates given team; null if not eliminated
 	public Iterable<String> certificateOfElimination(String team) {
-		int teamIdx = teams.indexOf(team);
+		int teamIdx = indexOf(team);
 		validateArgs(teamIdx);
 
 		Set<String> eTeams = new HashSet<String>();
@@ -199,56 +475,15 @@ public class BaseballElimination {
 			return eTeams;
 		}
 
-		// trivial elimination
-		int maxWins = w[teamIdx] + r[teamIdx];
-		for (int i = 0; i < teams.size(); i++) {
-			if (w[i] > maxWins) {
-				eTeams.add(teams.get(i));
-			}
-		}
-		if (eTeams.size() > 0) {
-			return eTeams;
-		}
-
-		FlowNetwork fn = constructFlowNetwork(teamIdx, maxWins);
-		FordFulkerson ff = new FordFulkerson(fn, 0, fn.V() - 1);
-		int numTeams = teams.size() - 1;
-		int nGameVertices = numTeams * (numTeams - 1) / 2;
-
-		for (int i = 1; i <= nGameVertices; i++) {
-			if (ff.inCut(i)) {
-				int[] eliminatingTeamIdx = computeTeams(i, teamIdx, numTeams, nGameVertices);
-				eTeams.add(teams.get(eliminatingTeamIdx[0]));
-				eTeams.add(teams.get(eliminatingTeamIdx[1]));
-			}
-		}
-		
 		// return null if not eliminated
-		if (eTeams.size()==0){
+		int[] certificate = certificate(teamIdx);
+		if (certificate == null) {
 			return null;
 		}
-		return eTeams;
-	}
-
-	private int[] computeTeams(int nGameV, int teamIdx, int numTeams, int nGameVertices) {
-		int t1 = 0;
-		int t2 = 1;
-		for (int i = 1; i <= nGameVertices; i++) {
-			// get capacity
-			int t11 = t1 >= teamIdx ? t1 + 1 : t1;
-			int t12 = t2 >= teamIdx ? t2 + 1 : t2;
-			if (i == nGameV) {
-				return new int[] { t11, t12 };
-			}
-			// update team 1 and team 2
-			if (t2 == numTeams - 1) {
-				t1++;
-				t2 = t1 + 1;
-			} else {
-				t2++;
-			}
+		for (int i : certificate) {
+			eTeams.add(teams.get(i));
 		}
-		return null;
+		return eTeams;
 	}
 
 	private void validateArgs(int... args) {
@@ -276,32 +511,3 @@ public class BaseballElimination {
 		System.exit(0);
 	}
 }
-
-class Match {
-	private Integer t1;
-	private Integer t2;
-
-	public Match(int t1, int t2) {
-		this.t1 = t1;
-		this.t2 = t2;
-	}
-
-	@Override
-	public boolean equals(Object obj) {
-		if (obj instanceof Match) {
-			Match anotherMatch = (Match) obj;
-			return (t1 == anotherMatch.t1 && t2 == anotherMatch.t2);
-		}
-		return false;
-	}
-
-	@Override
-	public int hashCode() {
-		return t1.hashCode() + t2.hashCode();
-	}
-
-	@Override
-	public String toString() {
-		return "Match [t1=" + t1 + "; t2=" + t2 + "]";
-	}
-}
@@ -0,0 +1,367 @@
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Burrows-Wheeler, move-to-front and Huffman coding chained in one process. the input is cut
+// into blocks of BurrowsWheeler.BLOCK_SIZE bytes that are compressed independently on a fixed
+// pool of threads and written back in input order. each compressed block is its length (a
+// 32-bit int) followed by
+//   the block length and the Burrows-Wheeler first index (32-bit ints),
+//   the canonical Huffman code length of each of the 256 byte values (one byte each),
+//   the Huffman coded move-to-front output, padded to a whole byte
+public class BlockCompressor {
+	private static final int R = 256;
+	private static final int HEADER = 4 + 4 + R;
+	// a block of at most 2^20 bytes cannot need longer codes than this (it would take a
+	// Fibonacci number of bytes beyond that); anything longer is a corrupt block
+	private static final int MAX_CODE_LENGTH = 32;
+
+	private final int threads;
+
+	// compressor with one thread per processor
+	public BlockCompressor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public BlockCompressor(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("thread count must be positive");
+		}
+		this.threads = threads;
+	}
+
+	// compress in to out; the channels are left open
+	public void compress(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		if (in == null || out == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		run(in, out, true);
+	}
+
+	// expand in, as written by compress, to out; the channels are left open
+	public void expand(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		if (in == null || out == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		run(in, out, false);
+	}
+
+	// read blocks on the calling thread and hand them to the pool. at most two blocks per
+	// thread are in flight, so memory stays bounded however far the reader runs ahead, and
+	// the oldest block is always the next one written
+	private void run(ReadableByteChannel in, WritableByteChannel out, final boolean compress) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final ThreadLocal<Coder> coders = new ThreadLocal<Coder>() {
+			@Override
+			protected Coder initialValue() {
+				return new Coder();
+			}
+		};
+		ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+		ByteBuffer length = ByteBuffer.allocate(4);
+		try {
+			while (true) {
+				final byte[] block = compress ? readBlock(in) : readCompressedBlock(in, length);
+				if (block == null) {
+					break;
+				}
+				if (pending.size() == 2 * threads) {
+					write(out, pending.removeFirst());
+				}
+				pending.addLast(pool.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() {
+						Coder coder = coders.get();
+						return compress ? coder.compress(block) : coder.expand(block);
+					}
+				}));
+			}
+			while (!pending.isEmpty()) {
+				write(out, pending.removeFirst());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static byte[] readBlock(ReadableByteChannel in) throws IOException {
+		byte[] block = new byte[BurrowsWheeler.BLOCK_SIZE];
+		int n = BurrowsWheeler.readFully(in, ByteBuffer.wrap(block));
+		if (n == 0) {
+			return null;
+		}
+		return n == block.length ? block : Arrays.copyOf(block, n);
+	}
+
+	private static byte[] readCompressedBlock(ReadableByteChannel in, ByteBuffer length) throws IOException {
+		length.clear();
+		int n = BurrowsWheeler.readFully(in, length);
+		if (n == 0) {
+			return null;
+		}
+		if (n < 4 || length.getInt(0) < HEADER) {
+			throw new IllegalArgumentException("corrupt block header");
+		}
+		byte[] block = new byte[length.getInt(0)];
+		if (BurrowsWheeler.readFully(in, ByteBuffer.wrap(block)) != block.length) {
+			throw new IllegalArgumentException("truncated block");
+		}
+		return block;
+	}
+
+	private static void write(WritableByteChannel out, Future<byte[]> block) throws IOException {
+		byte[] bytes;
+		try {
+			bytes = block.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		BurrowsWheeler.writeFully(out, ByteBuffer.wrap(bytes));
+	}
+
+	// one per pool thread, so the suffix sorting arrays and Huffman tables are reused
+	// from block to block
+	private static class Coder {
+		private final BurrowsWheeler.Transform transform = new BurrowsWheeler.Transform();
+		private final long[] freq = new long[R];
+		private final int[] lengths = new int[R];
+		private final int[] codes = new int[R];
+		// Huffman tree of at most 2R - 1 nodes and the min-heap used to build it
+		private final long[] weight = new long[2 * R];
+		private final int[] parent = new int[2 * R];
+		private final int[] heap = new int[2 * R];
+		// canonical decoding tables: codes of each length and the symbols in code order
+		private final int[] count = new int[MAX_CODE_LENGTH + 1];
+		private final int[] symbols = new int[R];
+
+		// the compressed block, with its length in front
+		public byte[] compress(byte[] block) {
+			int n = block.length;
+			byte[] mtf = new byte[n];
+			int first = transform.encode(block, n, mtf, 0);
+			MoveToFront.encode(mtf, 0, n);
+
+			for (int c = 0; c < R; c++) {
+				freq[c] = 0;
+			}
+			for (int i = 0; i < n; i++) {
+				freq[mtf[i] & 0xff]++;
+			}
+			codeLengths();
+			canonicalCodes();
+			long bits = 0;
+			for (int c = 0; c < R; c++) {
+				bits += freq[c] * lengths[c];
+			}
+
+			byte[] out = new byte[4 + HEADER + (int) ((bits + 7) >>> 3)];
+			ByteBuffer header = ByteBuffer.wrap(out);
+			header.putInt(out.length - 4);
+			header.putInt(n);
+			header.putInt(first);
+			for (int c = 0; c < R; c++) {
+				out[12 + c] = (byte) lengths[c];
+			}
+			int pos = 4 + HEADER;
+			long buffer = 0;
+			int buffered = 0;
+			for (int i = 0; i < n; i++) {
+				int c = mtf[i] & 0xff;
+				buffer = (buffer << lengths[c]) | codes[c];
+				buffered += lengths[c];
+				while (buffered >= 8) {
+					buffered -= 8;
+					out[pos++] = (byte) (buffer >>> buffered);
+				}
+			}
+			if (buffered > 0) {
+				out[pos] = (byte) (buffer << (8 - buffered));
+			}
+			return out;
+		}
+
+		// the original block of a compressed block without its length
+		public byte[] expand(byte[] block) {
+			ByteBuffer header = ByteBuffer.wrap(block);
+			int n = header.getInt();
+			int first = header.getInt();
+			if (n < 0 || n > BurrowsWheeler.BLOCK_SIZE) {
+				throw new IllegalArgumentException("corrupt block header");
+			}
+			for (int c = 0; c < R; c++) {
+				lengths[c] = block[8 + c] & 0xff;
+				if (lengths[c] > MAX_CODE_LENGTH) {
+					throw new IllegalArgumentException("corrupt code lengths");
+				}
+			}
+			for (int len = 0; len <= MAX_CODE_LENGTH; len++) {
+				count[len] = 0;
+			}
+			for (int c = 0; c < R; c++) {
+				count[lengths[c]]++;
+			}
+			int k = 0;
+			for (int len = 1; len <= MAX_CODE_LENGTH; len++) {
+				for (int c = 0; c < R; c++) {
+					if (lengths[c] == len) {
+						symbols[k++] = c;
+					}
+				}
+			}
+
+			// walk the canonical code one bit at a time: at each length the codes of that
+			// length are the count[len] values from first on
+			byte[] mtf = new byte[n];
+			int pos = HEADER;
+			int bit = 7;
+			for (int i = 0; i < n; i++) {
+				int code = 0;
+				int firstCode = 0;
+				int index = 0;
+				for (int len = 1;; len++) {
+					if (len > MAX_CODE_LENGTH || pos == block.length) {
+						throw new IllegalArgumentException("corrupt coded data");
+					}
+					code |= (block[pos] >>> bit) & 1;
+					if (--bit < 0) {
+						bit = 7;
+						pos++;
+					}
+					if (code - firstCode < count[len]) {
+						mtf[i] = (byte) symbols[index + code - firstCode];
+						break;
+					}
+					index += count[len];
+					firstCode = (firstCode + count[len]) << 1;
+					code <<= 1;
+				}
+			}
+			MoveToFront.decode(mtf, 0, n);
+			byte[] out = new byte[n];
+			transform.decode(mtf, 0, n, first, out);
+			return out;
+		}
+
+		// Huffman code length of each symbol from freq; a lone symbol gets a one-bit code
+		private void codeLengths() {
+			int size = 0;
+			for (int c = 0; c < R; c++) {
+				lengths[c] = 0;
+				if (freq[c] > 0) {
+					weight[c] = freq[c];
+					heap[++size] = c;
+					swim(size);
+				}
+			}
+			if (size == 1) {
+				lengths[heap[1]] = 1;
+				return;
+			}
+			int next = R;
+			while (size > 1) {
+				int a = heap[1];
+				heap[1] = heap[size--];
+				sink(1, size);
+				int b = heap[1];
+				weight[next] = weight[a] + weight[b];
+				parent[a] = next;
+				parent[b] = next;
+				heap[1] = next++;
+				sink(1, size);
+			}
+			// internal nodes are numbered after their children, so depths follow in reverse
+			int root = next - 1;
+			int[] depth = parent;
+			for (int v = root - 1; v >= R; v--) {
+				depth[v] = depth[v] == root ? 1 : depth[depth[v]] + 1;
+			}
+			for (int c = 0; c < R; c++) {
+				if (freq[c] > 0) {
+					lengths[c] = parent[c] == root ? 1 : depth[parent[c]] + 1;
+				}
+			}
+		}
+
+		private boolean less(int v, int w) {
+			return weight[v] < weight[w] || weight[v] == weight[w] && v < w;
+		}
+
+		private void swim(int k) {
+			while (k > 1 && less(heap[k], heap[k / 2])) {
+				int t = heap[k];
+				heap[k] = heap[k / 2];
+				heap[k / 2] = t;
+				k /= 2;
+			}
+		}
+
+		private void sink(int k, int size) {
+			while (2 * k <= size) {
+				int j = 2 * k;
+				if (j < size && less(heap[j + 1], heap[j])) {
+					j++;
+				}
+				if (!less(heap[j], heap[k])) {
+					break;
+				}
+				int t = heap[k];
+				heap[k] = heap[j];
+				heap[j] = t;
+				k = j;
+			}
+		}
+
+		// canonical codes: by length, then by symbol, each the previous code plus one
+		private void canonicalCodes() {
+			int code = 0;
+			for (int len = 1; len <= MAX_CODE_LENGTH; len++) {
+				for (int c = 0; c < R; c++) {
+					if (lengths[c] == len) {
+						codes[c] = code++;
+					}
+				}
+				code <<= 1;
+			}
+		}
+	}
+
+	// if args[0] is '-', compress standard input to standard output
+	// if args[0] is '+', expand standard input to standard output
+	// args[1], if given, is the number of threads
+	public static void main(String[] args) {
+		if (args.length == 0 || !args[0].equals("-") && !args[0].equals("+")) {
+			throw new IllegalArgumentException("Illegal command line argument");
+		}
+		BlockCompressor compressor = args.length > 1 ? new BlockCompressor(Integer.parseInt(args[1]))
+				: new BlockCompressor();
+		ReadableByteChannel in = new FileInputStream(FileDescriptor.in).getChannel();
+		WritableByteChannel out = new FileOutputStream(FileDescriptor.out).getChannel();
+		try {
+			if (args[0].equals("-")) {
+				compressor.compress(in, out);
+			} else {
+				compressor.expand(in, out);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -1,17 +1,169 @@
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 public class BurrowsWheeler {
+	// input is transformed in blocks of this many bytes; each block is written as its first
+	// index (a 32-bit int) followed by its last column, so input of at most one block is
+	// encoded exactly as by the whole-input transform
+	public static final int BLOCK_SIZE = 1 << 20;
+	private static final int R = 256;
+
 	// apply Burrows-Wheeler encoding, reading from standard input and writing to standard output
 	public static void encode() {
-
+		try {
+			encode(new FileInputStream(FileDescriptor.in).getChannel(),
+					new FileOutputStream(FileDescriptor.out).getChannel());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	// apply Burrows-Wheeler decoding, reading from standard input and writing to standard output
 	public static void decode() {
+		try {
+			decode(new FileInputStream(FileDescriptor.in).getChannel(),
+					new FileOutputStream(FileDescriptor.out).getChannel());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// encode in to out block by block; the channels are left open
+	public static void encode(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		Transform transform = new Transform();
+		byte[] block = new byte[BLOCK_SIZE];
+		ByteBuffer input = ByteBuffer.wrap(block);
+		ByteBuffer output = ByteBuffer.allocate(4 + BLOCK_SIZE);
+		while (true) {
+			input.clear();
+			int n = readFully(in, input);
+			if (n == 0) {
+				return;
+			}
+			output.clear();
+			output.putInt(transform.encode(block, n, output.array(), 4));
+			output.position(4 + n);
+			output.flip();
+			writeFully(out, output);
+		}
+	}
+
+	// decode in, as written by encode, to out block by block; the channels are left open
+	public static void decode(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		Transform transform = new Transform();
+		ByteBuffer input = ByteBuffer.allocate(4 + BLOCK_SIZE);
+		byte[] block = new byte[BLOCK_SIZE];
+		ByteBuffer output = ByteBuffer.wrap(block);
+		while (true) {
+			input.clear();
+			int n = readFully(in, input) - 4;
+			if (n < 0) {
+				if (n > -4) {
+					throw new IllegalArgumentException("truncated block header");
+				}
+				return;
+			}
+			transform.decode(input.array(), 4, n, input.getInt(0), block);
+			output.clear();
+			output.limit(n);
+			writeFully(out, output);
+		}
+	}
 
+	// read until buffer is full or the channel ends; returns the number of bytes read
+	static int readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			int n = in.read(buffer);
+			if (n < 0) {
+				break;
+			}
+			total += n;
+		}
+		return total;
+	}
+
+	static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	// the transform of one block at a time. the work arrays grow to the largest block seen and
+	// are reused, so a stream of blocks allocates nothing after the first
+	static class Transform {
+		private final CircularSuffixArray.Sorter sorter = new CircularSuffixArray.Sorter();
+		private int[] index = new int[0];
+		private int[] next = new int[0];
+		private final int[] count = new int[R + 1];
+
+		// write the last column of the sorted rotations of block[0 .. n - 1] to last[from ..]
+		// and return the row of the original block
+		public int encode(byte[] block, int n, byte[] last, int from) {
+			if (index.length < n) {
+				index = new int[n];
+			}
+			sorter.sort(block, n, index);
+			int first = -1;
+			for (int i = 0; i < n; i++) {
+				int start = index[i];
+				if (start == 0) {
+					first = i;
+				}
+				last[from + i] = block[start == 0 ? n - 1 : start - 1];
+			}
+			return first;
+		}
+
+		// invert encode: the block whose sorted rotations have last column
+		// last[from .. from + n - 1] and whose original is row first, into block[0 .. n - 1]
+		public void decode(byte[] last, int from, int n, int first, byte[] block) {
+			if (n == 0) {
+				return;
+			}
+			if (first < 0 || first >= n) {
+				throw new IllegalArgumentException("first index out of range");
+			}
+			if (next.length < n) {
+				next = new int[n];
+			}
+			// key-indexed counting: next[i] is the row of the rotation one to the left of row
+			// i's, found from the stable sort of the last column, which is the first column
+			for (int r = 0; r <= R; r++) {
+				count[r] = 0;
+			}
+			for (int i = 0; i < n; i++) {
+				count[(last[from + i] & 0xff) + 1]++;
+			}
+			for (int r = 0; r < R; r++) {
+				count[r + 1] += count[r];
+			}
+			for (int i = 0; i < n; i++) {
+				next[count[last[from + i] & 0xff]++] = i;
+			}
+			int row = first;
+			for (int i = 0; i < n; i++) {
+				row = next[row];
+				block[i] = last[from + row];
+			}
+		}
 	}
 
 	// if args[0] is '-', apply Burrows-Wheeler encoding
 	// if args[0] is '+', apply Burrows-Wheeler decoding
 	public static void main(String[] args) {
-
+		if (args.length > 0 && args[0].equals("-")) {
+			encode();
+		} else if (args.length > 0 && args[0].equals("+")) {
+			decode();
+		} else {
+			throw new IllegalArgumentException("Illegal command line argument");
+		}
 	}
-}
\ No newline at end of file
+}
@@ -1,21 +1,154 @@
+import java.util.Arrays;
+
 public class CircularSuffixArray {
+	// index[i] is the start of the ith sorted circular suffix
+	private final int[] index;
+
 	// circular suffix array of s
 	public CircularSuffixArray(String s) {
+		if (s == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		index = new int[s.length()];
+		new Sorter().sort(s, index);
+	}
 
+	// circular suffix array of the bytes of block, as unsigned values
+	public CircularSuffixArray(byte[] block) {
+		if (block == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		index = new int[block.length];
+		new Sorter().sort(block, block.length, index);
 	}
 
 	// length of s
 	public int length() {
-
+		return index.length;
 	}
 
 	// returns index of ith sorted suffix
 	public int index(int i) {
+		if (i < 0 || i >= index.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		return index[i];
+	}
+
+	// sorts circular suffixes by prefix doubling: after the pass for k, suffixes are ordered by
+	// their first 2k characters, and a suffix's class is the rank of that prefix. each pass is a
+	// counting sort on the class of the second half, which keeps the order of the first half,
+	// so a pass is O(n) and there are at most log n passes, stopping as soon as all classes
+	// differ or a pass finds no new class. long runs of one character therefore never cost the
+	// quadratic comparisons of a string sort. the work arrays are kept between calls, so
+	// sorting block after block allocates nothing once they have grown
+	static class Sorter {
+		private int[] classes = new int[0];
+		private int[] newClasses = new int[0];
+		private int[] shifted = new int[0];
+		private int[] count = new int[0];
 
+		// sorted circular suffixes of the chars of s into index
+		public void sort(String s, int[] index) {
+			int n = s.length();
+			grow(n);
+			int alphabet = 1;
+			for (int i = 0; i < n; i++) {
+				classes[i] = s.charAt(i);
+				alphabet = Math.max(alphabet, classes[i] + 1);
+			}
+			sort(n, alphabet, index);
+		}
+
+		// sorted circular suffixes of block[0 .. n - 1], as unsigned bytes, into index
+		public void sort(byte[] block, int n, int[] index) {
+			grow(n);
+			for (int i = 0; i < n; i++) {
+				classes[i] = block[i] & 0xff;
+			}
+			sort(n, 256, index);
+		}
+
+		private void grow(int n) {
+			if (classes.length < n) {
+				classes = new int[n];
+				newClasses = new int[n];
+				shifted = new int[n];
+			}
+		}
+
+		// sort by the first character, whose values are in classes[0 .. n - 1], then double
+		private void sort(int n, int alphabet, int[] index) {
+			if (n == 0) {
+				return;
+			}
+			if (count.length < Math.max(alphabet, n)) {
+				count = new int[Math.max(alphabet, n)];
+			}
+			countingSort(classes, n, alphabet, null, index);
+			int ranks = rank(index, n, 0);
+			int previous = 0;
+			// when a pass adds no class, suffixes that agree on k characters also agree on the
+			// next k, and so on all the way round: they are equal rotations (a run of one
+			// character, or a periodic block) and every further pass would change nothing
+			for (int k = 1; k < n && ranks < n && ranks > previous; k <<= 1) {
+				previous = ranks;
+				// the order by the 2nd half of each 2k-prefix is the current order shifted back by k
+				for (int i = 0; i < n; i++) {
+					int j = index[i] - k;
+					shifted[i] = j < 0 ? j + n : j;
+				}
+				countingSort(classes, n, ranks, shifted, index);
+				ranks = rank(index, n, k);
+			}
+		}
+
+		// stable sort of order (or of 0 .. n - 1 if order is null) by key, into index
+		private void countingSort(int[] key, int n, int range, int[] order, int[] index) {
+			Arrays.fill(count, 0, range, 0);
+			for (int i = 0; i < n; i++) {
+				count[key[i]]++;
+			}
+			for (int r = 1; r < range; r++) {
+				count[r] += count[r - 1];
+			}
+			for (int i = n - 1; i >= 0; i--) {
+				int s = order == null ? i : order[i];
+				index[--count[key[s]]] = s;
+			}
+		}
+
+		// classes of the sorted suffixes by their first 2k characters (k = 0: the first
+		// character); returns the number of classes
+		private int rank(int[] index, int n, int k) {
+			int[] c = newClasses;
+			c[index[0]] = 0;
+			int ranks = 1;
+			for (int i = 1; i < n; i++) {
+				int cur = index[i];
+				int prev = index[i - 1];
+				boolean same = classes[cur] == classes[prev];
+				if (same && k > 0) {
+					int curHalf = cur + k < n ? cur + k : cur + k - n;
+					int prevHalf = prev + k < n ? prev + k : prev + k - n;
+					same = classes[curHalf] == classes[prevHalf];
+				}
+				if (!same) {
+					ranks++;
+				}
+				c[cur] = ranks - 1;
+			}
+			newClasses = classes;
+			classes = c;
+			return ranks;
+		}
 	}
 
 	// unit testing of the methods (optional)
 	public static void main(String[] args) {
-
+		CircularSuffixArray csa = new CircularSuffixArray(args.length > 0 ? args[0] : "ABRACADABRA!");
+		for (int i = 0; i < csa.length(); i++) {
+			StdOut.println(i + " " + csa.index(i));
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,304 @@
+import java.util.Arrays;
+
+// immutable digraph in compressed sparse row form: the targets of the edges leaving v are
+// targets[offsets[v]] .. targets[offsets[v + 1] - 1]. read-only replacement for Digraph in SAP
+class CompactDigraph {
+	private final int[] offsets;
+	private final int[] targets;
+
+	// copy of an algs4 digraph
+	public CompactDigraph(Digraph G) {
+		offsets = new int[G.V() + 1];
+		targets = new int[G.E()];
+		int e = 0;
+		for (int v = 0; v < G.V(); v++) {
+			offsets[v] = e;
+			for (int w : G.adj(v)) {
+				targets[e++] = w;
+			}
+		}
+		offsets[G.V()] = e;
+	}
+
+	// digraph on V vertices with the E edges tails[i] -> heads[i]
+	public CompactDigraph(int V, int[] tails, int[] heads, int E) {
+		offsets = new int[V + 1];
+		targets = new int[E];
+		for (int i = 0; i < E; i++) {
+			validateVertex(tails[i], V);
+			validateVertex(heads[i], V);
+			offsets[tails[i] + 1]++;
+		}
+		for (int v = 0; v < V; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		// counting sort on the tail vertex
+		int[] next = Arrays.copyOf(offsets, V);
+		for (int i = 0; i < E; i++) {
+			targets[next[tails[i]]++] = heads[i];
+		}
+	}
+
+	// wraps arrays already in compressed sparse row form, without copying or checking them
+	CompactDigraph(int[] offsets, int[] targets) {
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	private void validateVertex(int v, int V) {
+		if (v < 0 || v >= V) {
+			throw new IndexOutOfBoundsException("vertex " + v + " is not between 0 and " + (V - 1));
+		}
+	}
+
+	public int V() {
+		return offsets.length - 1;
+	}
+
+	public int E() {
+		return targets.length;
+	}
+
+	public int outdegree(int v) {
+		return offsets[v + 1] - offsets[v];
+	}
+
+	// position of the first edge leaving v
+	public int adjStart(int v) {
+		return offsets[v];
+	}
+
+	// position after the last edge leaving v
+	public int adjEnd(int v) {
+		return offsets[v + 1];
+	}
+
+	// head of the edge at the given position
+	public int target(int e) {
+		return targets[e];
+	}
+
+	public boolean hasEdge(int v, int w) {
+		for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+			if (targets[e] == w) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// copy of this graph with one more vertex, numbered V(), whose edges go to adj
+	public CompactDigraph withVertex(int[] adj) {
+		int V = V();
+		for (int w : adj) {
+			validateVertex(w, V);
+		}
+		int[] newOffsets = Arrays.copyOf(offsets, V + 2);
+		newOffsets[V + 1] = targets.length + adj.length;
+		int[] newTargets = Arrays.copyOf(targets, targets.length + adj.length);
+		System.arraycopy(adj, 0, newTargets, targets.length, adj.length);
+		return new CompactDigraph(newOffsets, newTargets);
+	}
+
+	// copy of this graph with the edge v -> w added
+	public CompactDigraph withEdge(int v, int w) {
+		validateVertex(v, V());
+		validateVertex(w, V());
+		int[] newOffsets = new int[offsets.length];
+		int[] newTargets = new int[targets.length + 1];
+		int insertAt = offsets[v + 1];
+		System.arraycopy(targets, 0, newTargets, 0, insertAt);
+		newTargets[insertAt] = w;
+		System.arraycopy(targets, insertAt, newTargets, insertAt + 1, targets.length - insertAt);
+		for (int u = 0; u < offsets.length; u++) {
+			newOffsets[u] = u <= v ? offsets[u] : offsets[u] + 1;
+		}
+		return new CompactDigraph(newOffsets, newTargets);
+	}
+
+	// copy of this graph with the edges tails[i] -> heads[i], i < n, added in one pass; an edge
+	// already in the graph or repeated in the batch is kept once
+	public CompactDigraph withEdges(int[] tails, int[] heads, int n) {
+		int V = V();
+		int[] added = new int[V + 1];
+		for (int i = 0; i < n; i++) {
+			validateVertex(tails[i], V);
+			validateVertex(heads[i], V);
+			added[tails[i] + 1]++;
+		}
+		for (int v = 0; v < V; v++) {
+			added[v + 1] += added[v];
+		}
+		// counting sort of the new edges on their tail
+		int[] next = Arrays.copyOf(added, V);
+		int[] addedHeads = new int[n];
+		for (int i = 0; i < n; i++) {
+			addedHeads[next[tails[i]]++] = heads[i];
+		}
+		int[] newOffsets = new int[V + 1];
+		int[] newTargets = new int[targets.length + n];
+		int k = 0;
+		for (int v = 0; v < V; v++) {
+			newOffsets[v] = k;
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				newTargets[k++] = targets[e];
+			}
+			for (int i = added[v]; i < added[v + 1]; i++) {
+				int w = addedHeads[i];
+				int e = newOffsets[v];
+				while (e < k && newTargets[e] != w) {
+					e++;
+				}
+				if (e == k) {
+					newTargets[k++] = w;
+				}
+			}
+		}
+		newOffsets[V] = k;
+		return new CompactDigraph(newOffsets, k == newTargets.length ? newTargets : Arrays.copyOf(newTargets, k));
+	}
+
+	// is there a path from -> .. -> to? only visits vertices reachable from from
+	public boolean reaches(int from, int to) {
+		boolean[] marked = new boolean[V()];
+		int[] queue = new int[V()];
+		int head = 0, tail = 0;
+		marked[from] = true;
+		queue[tail++] = from;
+		while (head < tail) {
+			int v = queue[head++];
+			if (v == to) {
+				return true;
+			}
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				if (!marked[targets[e]]) {
+					marked[targets[e]] = true;
+					queue[tail++] = targets[e];
+				}
+			}
+		}
+		return false;
+	}
+
+	// marks every vertex reachable from any of sources[0 .. n - 1], the sources included.
+	// run on the reverse graph, it marks the vertices with a path to a source
+	public boolean[] reachable(int[] sources, int n) {
+		boolean[] marked = new boolean[V()];
+		int[] queue = new int[V()];
+		int head = 0, tail = 0;
+		for (int i = 0; i < n; i++) {
+			if (!marked[sources[i]]) {
+				marked[sources[i]] = true;
+				queue[tail++] = sources[i];
+			}
+		}
+		while (head < tail) {
+			int v = queue[head++];
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				if (!marked[targets[e]]) {
+					marked[targets[e]] = true;
+					queue[tail++] = targets[e];
+				}
+			}
+		}
+		return marked;
+	}
+
+	// index of the first of the edges tails[i] -> heads[i], i < n, that closes a cycle when
+	// they are added in order, or -1 if none does. like reaches, edge i is checked by a search
+	// from its head, over this graph and the edges before it, that only visits the vertices
+	// reachable from the head
+	public int firstCycle(int[] tails, int[] heads, int n) {
+		int V = V();
+		int[] added = new int[V + 1];
+		for (int i = 0; i < n; i++) {
+			validateVertex(tails[i], V);
+			validateVertex(heads[i], V);
+			added[tails[i] + 1]++;
+		}
+		for (int v = 0; v < V; v++) {
+			added[v + 1] += added[v];
+		}
+		// the new edges by tail, in batch order
+		int[] next = Arrays.copyOf(added, V);
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[next[tails[i]]++] = i;
+		}
+		boolean[] marked = new boolean[V];
+		int[] queue = new int[V];
+		for (int i = 0; i < n; i++) {
+			int head = 0, tail = 0;
+			marked[heads[i]] = true;
+			queue[tail++] = heads[i];
+			boolean cycle = false;
+			while (head < tail) {
+				int v = queue[head++];
+				if (v == tails[i]) {
+					cycle = true;
+					break;
+				}
+				for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+					if (!marked[targets[e]]) {
+						marked[targets[e]] = true;
+						queue[tail++] = targets[e];
+					}
+				}
+				for (int k = added[v]; k < added[v + 1] && order[k] < i; k++) {
+					int w = heads[order[k]];
+					if (!marked[w]) {
+						marked[w] = true;
+						queue[tail++] = w;
+					}
+				}
+			}
+			// unmark only what this search visited
+			for (int k = 0; k < tail; k++) {
+				marked[queue[k]] = false;
+			}
+			if (cycle) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// the same graph with every edge pointing the other way
+	public CompactDigraph reverse() {
+		int V = V();
+		int[] tails = new int[E()];
+		int[] heads = new int[E()];
+		for (int v = 0; v < V; v++) {
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				tails[e] = targets[e];
+				heads[e] = v;
+			}
+		}
+		return new CompactDigraph(V, tails, heads, E());
+	}
+
+	// Kahn's algorithm: the graph is acyclic iff every vertex can be removed in topological order
+	public boolean hasCycle() {
+		int V = V();
+		int[] indegree = new int[V];
+		for (int target : targets) {
+			indegree[target]++;
+		}
+		int[] queue = new int[V];
+		int head = 0, tail = 0;
+		for (int v = 0; v < V; v++) {
+			if (indegree[v] == 0) {
+				queue[tail++] = v;
+			}
+		}
+		while (head < tail) {
+			int v = queue[head++];
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				if (--indegree[targets[e]] == 0) {
+					queue[tail++] = targets[e];
+				}
+			}
+		}
+		return tail != V;
+	}
+}
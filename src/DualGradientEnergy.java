@@ -0,0 +1,59 @@
+import java.util.Arrays;
+
+// squared colour differences of the left and right neighbours plus those of the upper and lower
+// neighbours. border pixels have 3*255^2
+class DualGradientEnergy implements EnergyFunction {
+	private static final int BORDER_ENERGY = 3 * (0xff * 0xff);
+
+	@Override
+	public int energy(int[] pixels, int stride, int rows, int cols, int r, int c) {
+		if (c == 0 || c == cols - 1 || r == 0 || r == rows - 1) {
+			return BORDER_ENERGY;
+		}
+		int i = r * stride + c;
+		return delta(pixels[i - 1], pixels[i + 1]) + delta(pixels[i - stride], pixels[i + stride]);
+	}
+
+	@Override
+	public void energies(int[] pixels, int stride, int rows, int cols, int r, int[] energy) {
+		int from = r * stride;
+		int to = from + cols - 1;
+		if (r == 0 || r == rows - 1) {
+			Arrays.fill(energy, from, to + 1, BORDER_ENERGY);
+			return;
+		}
+		energy[from] = BORDER_ENERGY;
+		energy[to] = BORDER_ENERGY;
+		// straight-line int arithmetic over four shifted views of the buffer
+		for (int i = from + 1; i < to; i++) {
+			energy[i] = delta(pixels[i - 1], pixels[i + 1]) + delta(pixels[i - stride], pixels[i + stride]);
+		}
+	}
+
+	@Override
+	public int edgeCost(int[] pixels, int stride, int rows, int cols, int r, int c, int edge) {
+		return 0;
+	}
+
+	@Override
+	public boolean hasEdgeCosts() {
+		return false;
+	}
+
+	@Override
+	public boolean symmetric() {
+		return true;
+	}
+
+	@Override
+	public int reach() {
+		return 1;
+	}
+
+	static int delta(int rgb1, int rgb2) {
+		int redDiff = ((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff);
+		int greenDiff = ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+		int blueDiff = (rgb1 & 0xff) - (rgb2 & 0xff);
+		return redDiff * redDiff + blueDiff * blueDiff + greenDiff * greenDiff;
+	}
+}
@@ -0,0 +1,33 @@
+// energy of the pixels of a row-major buffer of packed RGB ints: the pixel in buffer row r and
+// column c is pixels[r * stride + c], and only its low 24 bits are colour. seams are vertical
+// seams of the buffer
+public interface EnergyFunction {
+	// the dual-gradient energy, the default
+	EnergyFunction DUAL_GRADIENT = new DualGradientEnergy();
+	// squared Sobel gradient
+	EnergyFunction SOBEL = new SobelEnergy();
+	// cost of the new edges that removing the pixel creates
+	EnergyFunction FORWARD = new ForwardEnergy();
+
+	// energy of the pixel in buffer row r and column c. it may only read the pixel and its
+	// neighbours, the 3x3 block around it clipped to the buffer
+	int energy(int[] pixels, int stride, int rows, int cols, int r, int c);
+
+	// energies of all pixels of buffer row r, into energy[r * stride] .. energy[r * stride + cols - 1]
+	void energies(int[] pixels, int stride, int rows, int cols, int r, int[] energy);
+
+	// extra cost of a seam that enters the pixel in buffer row r and column c from column
+	// c + edge of row r - 1, edge being -1, 0 or 1; only asked if hasEdgeCosts()
+	int edgeCost(int[] pixels, int stride, int rows, int cols, int r, int c, int edge);
+
+	// whether the seam search has to add edgeCost to the energies
+	boolean hasEdgeCosts();
+
+	// whether the energies of the transposed buffer are the transposed energies; if not they
+	// are recomputed whenever the seam direction changes
+	boolean symmetric();
+
+	// after the vertical seam through column s of a row is removed, only the energies of
+	// columns s - reach() .. s + reach() - 1 of that row can change
+	int reach();
+}
@@ -0,0 +1,46 @@
+// forward energy: the cost of the pixels that removing a seam makes adjacent. the energy of a
+// pixel is the squared colour difference of its left and right neighbours (C_U); a seam that
+// comes from the upper-left also pays for the upper and left neighbours meeting (C_L), one
+// from the upper-right for the upper and right neighbours (C_R). the value depends on the
+// seam direction; SeamCarver.energy reports the one for vertical seams
+class ForwardEnergy implements EnergyFunction {
+
+	@Override
+	public int energy(int[] pixels, int stride, int rows, int cols, int r, int c) {
+		int i = r * stride + c;
+		int left = c > 0 ? pixels[i - 1] : pixels[i];
+		int right = c < cols - 1 ? pixels[i + 1] : pixels[i];
+		return DualGradientEnergy.delta(left, right);
+	}
+
+	@Override
+	public void energies(int[] pixels, int stride, int rows, int cols, int r, int[] energy) {
+		for (int c = 0; c < cols; c++) {
+			energy[r * stride + c] = energy(pixels, stride, rows, cols, r, c);
+		}
+	}
+
+	@Override
+	public int edgeCost(int[] pixels, int stride, int rows, int cols, int r, int c, int edge) {
+		if (edge == 0) {
+			return 0;
+		}
+		int i = r * stride + c;
+		return DualGradientEnergy.delta(pixels[i - stride], pixels[i + edge]);
+	}
+
+	@Override
+	public boolean hasEdgeCosts() {
+		return true;
+	}
+
+	@Override
+	public boolean symmetric() {
+		return false;
+	}
+
+	@Override
+	public int reach() {
+		return 1;
+	}
+}
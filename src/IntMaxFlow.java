@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+// maximum flow with int capacities on primitive arrays (Dinic's algorithm). edges are stored in
+// pairs: edge e and its residual edge e ^ 1. the elimination networks have four layers (source,
+// games, teams, sink), so each phase's level graph is shallow and few phases are needed
+class IntMaxFlow {
+	// capacity that no cut through game -> team edges can use
+	public static final int INFINITE = Integer.MAX_VALUE;
+	private final int V;
+	// adjacency lists: first edge of each vertex, next edge of the same tail, head of each edge
+	private final int[] first;
+	private int[] next;
+	private int[] to;
+	// residual capacity of each edge
+	private int[] cap;
+	private int E;
+	private final int[] level;
+	private final int[] current;
+	private final int[] queue;
+	private final int[] path;
+
+	public IntMaxFlow(int V) {
+		this.V = V;
+		first = new int[V];
+		Arrays.fill(first, -1);
+		next = new int[16];
+		to = new int[16];
+		cap = new int[16];
+		level = new int[V];
+		current = new int[V];
+		queue = new int[V];
+		path = new int[V];
+	}
+
+	public int V() {
+		return V;
+	}
+
+	// add the edge v -> w and return its index
+	public int addEdge(int v, int w, int capacity) {
+		return addEdge(v, w, capacity, 0);
+	}
+
+	// add the edge v -> w already carrying flow, to warm-start maxFlow from a feasible flow
+	public int addEdge(int v, int w, int capacity, int flow) {
+		if (capacity < 0 || flow < 0 || flow > capacity) {
+			throw new IllegalArgumentException("need 0 <= flow <= capacity");
+		}
+		if (E + 2 > to.length) {
+			next = Arrays.copyOf(next, 2 * to.length);
+			cap = Arrays.copyOf(cap, 2 * to.length);
+			to = Arrays.copyOf(to, 2 * to.length);
+		}
+		int e = E;
+		link(e, v, w, capacity - flow);
+		link(e + 1, w, v, flow);
+		E += 2;
+		return e;
+	}
+
+	private void link(int e, int v, int w, int capacity) {
+		to[e] = w;
+		cap[e] = capacity;
+		next[e] = first[v];
+		first[v] = e;
+	}
+
+	// flow on edge e
+	public int flow(int e) {
+		return cap[e ^ 1];
+	}
+
+	// augment the current flow to a maximum flow from s to t and return the flow added
+	public int maxFlow(int s, int t) {
+		int total = 0;
+		while (bfs(s, t)) {
+			System.arraycopy(first, 0, current, 0, V);
+			total += augment(s, t);
+		}
+		return total;
+	}
+
+	// is v reachable from the source in the residual graph of the last maxFlow?
+	public boolean inCut(int v) {
+		return level[v] >= 0;
+	}
+
+	// level of every vertex reachable from s in the residual graph; true if t is one of them
+	private boolean bfs(int s, int t) {
+		Arrays.fill(level, -1);
+		int head = 0, tail = 0;
+		level[s] = 0;
+		queue[tail++] = s;
+		while (head < tail) {
+			int v = queue[head++];
+			for (int e = first[v]; e != -1; e = next[e]) {
+				if (cap[e] > 0 && level[to[e]] < 0) {
+					level[to[e]] = level[v] + 1;
+					queue[tail++] = to[e];
+				}
+			}
+		}
+		return level[t] >= 0;
+	}
+
+	// blocking flow of the level graph, found with an explicit stack of edges instead of
+	// recursion, since residual paths can be as long as V
+	private int augment(int s, int t) {
+		int total = 0;
+		int depth = 0;
+		int v = s;
+		while (true) {
+			if (v == t) {
+				int bottleneck = INFINITE;
+				for (int i = 0; i < depth; i++) {
+					bottleneck = Math.min(bottleneck, cap[path[i]]);
+				}
+				for (int i = 0; i < depth; i++) {
+					cap[path[i]] -= bottleneck;
+					cap[path[i] ^ 1] += bottleneck;
+				}
+				total += bottleneck;
+				depth = 0;
+				v = s;
+				continue;
+			}
+			int e = current[v];
+			while (e != -1 && (cap[e] == 0 || level[to[e]] != level[v] + 1)) {
+				e = next[e];
+			}
+			current[v] = e;
+			if (e != -1) {
+				path[depth++] = e;
+				v = to[e];
+			} else if (v == s) {
+				return total;
+			} else {
+				// dead end: retreat and skip the edge that led here
+				level[v] = -1;
+				v = to[path[--depth] ^ 1];
+				current[v] = next[current[v]];
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+// a read-write file mapped into memory in 1 GiB segments and accessed with absolute byte
+// offsets, so it can be larger than a single mapping. the segment size is a multiple of 4, so
+// an int at an offset that is a multiple of 4 never straddles two segments
+class MappedFile implements Closeable {
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+	private final File file;
+	private final boolean temporary;
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer[] segments;
+	private boolean closed;
+
+	private MappedFile(File file, long length, boolean temporary) throws IOException {
+		this.file = file;
+		this.temporary = temporary;
+		raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+			FileChannel channel = raf.getChannel();
+			segments = new MappedByteBuffer[(int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+			for (int i = 0; i < segments.length; i++) {
+				long from = (long) i << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, from,
+						Math.min(length - from, 1L << SEGMENT_BITS));
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	// a mapped file of the given length in the temporary-file directory, deleted on close
+	public static MappedFile temporary(long length) throws IOException {
+		File file = File.createTempFile("seams", ".bin");
+		return new MappedFile(file, length, true);
+	}
+
+	public int getInt(long offset) {
+		return segments[(int) (offset >>> SEGMENT_BITS)].getInt((int) (offset & SEGMENT_MASK));
+	}
+
+	public void putInt(long offset, int value) {
+		segments[(int) (offset >>> SEGMENT_BITS)].putInt((int) (offset & SEGMENT_MASK), value);
+	}
+
+	public byte get(long offset) {
+		return segments[(int) (offset >>> SEGMENT_BITS)].get((int) (offset & SEGMENT_MASK));
+	}
+
+	public void put(long offset, byte value) {
+		segments[(int) (offset >>> SEGMENT_BITS)].put((int) (offset & SEGMENT_MASK), value);
+	}
+
+	// closes the file and, if it is temporary, deletes it. the segments are dropped first, so
+	// that the mappings can be released before the delete; closing again has no effect
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (segments != null) {
+			Arrays.fill(segments, null);
+		}
+		raf.close();
+		if (temporary) {
+			Files.delete(file.toPath());
+		}
+	}
+}
@@ -1,17 +1,85 @@
 public class MoveToFront {
+    private static final int R = 256;
+
     // apply move-to-front encoding, reading from standard input and writing to standard output
     public static void encode(){
-    	
+        char[] order = initialOrder();
+        while (!BinaryStdIn.isEmpty()) {
+            char c = BinaryStdIn.readChar();
+            int i = 0;
+            while (order[i] != c) {
+                i++;
+            }
+            System.arraycopy(order, 0, order, 1, i);
+            order[0] = c;
+            BinaryStdOut.write((char) i);
+        }
+        BinaryStdOut.close();
     }
 
     // apply move-to-front decoding, reading from standard input and writing to standard output
     public static void decode(){
-    	
+        char[] order = initialOrder();
+        while (!BinaryStdIn.isEmpty()) {
+            int i = BinaryStdIn.readChar();
+            char c = order[i];
+            System.arraycopy(order, 0, order, 1, i);
+            order[0] = c;
+            BinaryStdOut.write(c);
+        }
+        BinaryStdOut.close();
+    }
+
+    private static char[] initialOrder() {
+        char[] order = new char[R];
+        for (int i = 0; i < R; i++) {
+            order[i] = (char) i;
+        }
+        return order;
+    }
+
+    // move-to-front encode block[from .. from + n - 1] in place, starting from the identity order
+    static void encode(byte[] block, int from, int n) {
+        byte[] order = new byte[R];
+        for (int i = 0; i < R; i++) {
+            order[i] = (byte) i;
+        }
+        for (int k = from; k < from + n; k++) {
+            byte c = block[k];
+            int i = 0;
+            while (order[i] != c) {
+                i++;
+            }
+            System.arraycopy(order, 0, order, 1, i);
+            order[0] = c;
+            block[k] = (byte) i;
+        }
+    }
+
+    // invert encode in place
+    static void decode(byte[] block, int from, int n) {
+        byte[] order = new byte[R];
+        for (int i = 0; i < R; i++) {
+            order[i] = (byte) i;
+        }
+        for (int k = from; k < from + n; k++) {
+            int i = block[k] & 0xff;
+            byte c = order[i];
+            System.arraycopy(order, 0, order, 1, i);
+            order[0] = c;
+            block[k] = c;
+        }
     }
 
     // if args[0] is '-', apply move-to-front encoding
     // if args[0] is '+', apply move-to-front decoding
     public static void main(String[] args){
-    	
+        if (args.length > 0 && args[0].equals("-")) {
+            encode();
+        } else if (args.length > 0 && args[0].equals("+")) {
+            decode();
+        } else {
+            throw new IllegalArgumentException("Illegal command line argument");
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// read-only map from noun to the ids of its synsets. nouns are numbered 0 .. size() - 1 and
+// found through an open-addressing hash table of noun numbers; the synset ids of noun i are
+// ids[idStart(i)] .. ids[idEnd(i) - 1], sorted and distinct, all in one shared int[]. nouns
+// read from a snapshot are decoded as lookups reach them
+class NounDictionary {
+	private final PackedStrings nouns;
+	// slot -> noun number + 1, 0 for an empty slot; the length is a power of two
+	private final int[] table;
+	private final int[] idOffsets;
+	private final int[] ids;
+
+	// wraps arrays built by a Builder or read back from a snapshot, without copying them
+	NounDictionary(PackedStrings nouns, int[] table, int[] idOffsets, int[] ids) {
+		this.nouns = nouns;
+		this.table = table;
+		this.idOffsets = idOffsets;
+		this.ids = ids;
+	}
+
+	// number of the noun, or -1 if it is not in the dictionary
+	public int indexOf(String noun) {
+		return find(table, nouns, noun, noun.hashCode());
+	}
+
+	private static int find(int[] table, List<String> nouns, String noun, int hash) {
+		int mask = table.length - 1;
+		for (int slot = spread(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			String candidate = nouns.get(table[slot] - 1);
+			if (candidate.hashCode() == hash && candidate.equals(noun)) {
+				return table[slot] - 1;
+			}
+		}
+		return -1;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	public int size() {
+		return nouns.size();
+	}
+
+	public String noun(int i) {
+		return nouns.get(i);
+	}
+
+	public List<String> nouns() {
+		return nouns;
+	}
+
+	// the shared array of synset ids
+	public int[] ids() {
+		return ids;
+	}
+
+	public int idStart(int i) {
+		return idOffsets[i];
+	}
+
+	public int idEnd(int i) {
+		return idOffsets[i + 1];
+	}
+
+	// copy of this dictionary in which each of the nouns also belongs to synset id; the
+	// arrays are copied, this dictionary is left untouched
+	public NounDictionary with(String[] newNouns, int id) {
+		int[] table = this.table;
+		int size = nouns.size();
+		// nouns not in the dictionary yet, each once, numbered from size on
+		String[] fresh = new String[newNouns.length];
+		int extra = 0;
+		boolean[] added = new boolean[size + newNouns.length];
+		for (String noun : newNouns) {
+			int i = find(table, nouns, noun, noun.hashCode());
+			for (int k = 0; k < extra && i == -1; k++) {
+				if (fresh[k].equals(noun)) {
+					i = size + k;
+				}
+			}
+			if (i == -1) {
+				fresh[extra] = noun;
+				i = size + extra++;
+			}
+			added[i] = true;
+		}
+		PackedStrings nouns = extra == 0 ? this.nouns : this.nouns.with(fresh, extra);
+		if (extra > 0) {
+			if (2 * (size + extra) > table.length) {
+				int length = table.length;
+				while (2 * (size + extra) > length) {
+					length *= 2;
+				}
+				table = new int[length];
+				for (int k = 0; k < size; k++) {
+					Builder.insert(table, nouns.get(k), k);
+				}
+			} else {
+				table = table.clone();
+			}
+			for (int k = 0; k < extra; k++) {
+				Builder.insert(table, fresh[k], size + k);
+			}
+			size += extra;
+		}
+
+		int[] newOffsets = new int[size + 1];
+		int[] newIds = new int[ids.length + newNouns.length];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			newOffsets[i] = n;
+			int from = i < this.nouns.size() ? idOffsets[i] : 0;
+			int to = i < this.nouns.size() ? idOffsets[i + 1] : 0;
+			boolean insert = added[i];
+			for (int k = from; k < to; k++) {
+				if (insert && id <= ids[k]) {
+					if (id < ids[k]) {
+						newIds[n++] = id;
+					}
+					insert = false;
+				}
+				newIds[n++] = ids[k];
+			}
+			if (insert) {
+				newIds[n++] = id;
+			}
+		}
+		newOffsets[size] = n;
+		return new NounDictionary(nouns, table, newOffsets, Arrays.copyOf(newIds, n));
+	}
+
+	int[] table() {
+		return table;
+	}
+
+	int[] idOffsets() {
+		return idOffsets;
+	}
+
+	// collects (noun, synset id) pairs, interning each noun on first sight
+	static class Builder {
+		private List<String> nouns = new ArrayList<String>();
+		private int[] table = new int[32];
+		private int size;
+		private int[] pairNoun = new int[16];
+		private int[] pairId = new int[16];
+		private int pairs;
+
+		public void add(String noun, int id) {
+			int i = find(table, nouns, noun, noun.hashCode());
+			if (i == -1) {
+				i = intern(noun);
+			}
+			if (pairs == pairNoun.length) {
+				pairNoun = Arrays.copyOf(pairNoun, 2 * pairs);
+				pairId = Arrays.copyOf(pairId, 2 * pairs);
+			}
+			pairNoun[pairs] = i;
+			pairId[pairs] = id;
+			pairs++;
+		}
+
+		private int intern(String noun) {
+			nouns.add(noun);
+			// keep the table at most half full
+			if (2 * (size + 1) > table.length) {
+				table = new int[2 * table.length];
+				for (int i = 0; i < size; i++) {
+					insert(table, nouns.get(i), i);
+				}
+			}
+			insert(table, noun, size);
+			return size++;
+		}
+
+		private static void insert(int[] table, String noun, int i) {
+			int mask = table.length - 1;
+			int slot = spread(noun.hashCode()) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = i + 1;
+		}
+
+		public NounDictionary build() {
+			// counting sort of the pairs by noun, then sort and dedupe each noun's ids
+			int[] idOffsets = new int[size + 1];
+			for (int p = 0; p < pairs; p++) {
+				idOffsets[pairNoun[p] + 1]++;
+			}
+			for (int i = 0; i < size; i++) {
+				idOffsets[i + 1] += idOffsets[i];
+			}
+			int[] next = Arrays.copyOf(idOffsets, size);
+			int[] ids = new int[pairs];
+			for (int p = 0; p < pairs; p++) {
+				ids[next[pairNoun[p]]++] = pairId[p];
+			}
+			int distinct = 0;
+			int from = 0;
+			for (int i = 0; i < size; i++) {
+				int to = idOffsets[i + 1];
+				Arrays.sort(ids, from, to);
+				idOffsets[i] = distinct;
+				for (int k = from; k < to; k++) {
+					if (k == from || ids[k] != ids[k - 1]) {
+						ids[distinct++] = ids[k];
+					}
+				}
+				from = to;
+			}
+			idOffsets[size] = distinct;
+			return new NounDictionary(new PackedStrings(nouns.toArray(new String[size])), table, idOffsets,
+					Arrays.copyOf(ids, distinct));
+		}
+	}
+}
@@ -6,19 +6,20 @@ public class Outcast {
 	}
 
 	public String outcast(String[] nouns) { // given an array of WordNet nouns, return an outcast
-		long maxDist = 0;
-		String outcast = "";
+		// all pairwise distances in one parallel batch, each pair looked up once
+		int[][] matrix = wordnet.distanceMatrix(nouns);
+		long[] dist = new long[nouns.length];
 		for (int i = 0; i < nouns.length; i++) {
-			String noun = nouns[i];
-			long dist = 0;
 			for (int j = 0; j < nouns.length; j++) {
-				if (j != i) {
-					dist += wordnet.distance(noun, nouns[j]);
-				}
+				dist[i] += matrix[i][j];
 			}
-			if (maxDist < dist) {
-				maxDist = dist;
-				outcast = noun;
+		}
+		long maxDist = 0;
+		String outcast = "";
+		for (int i = 0; i < nouns.length; i++) {
+			if (maxDist < dist[i]) {
+				maxDist = dist[i];
+				outcast = nouns[i];
 			}
 		}
 		return outcast;
@@ -0,0 +1,62 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+// read-only list of strings, some of which may still be packed as UTF-8: a string not decoded
+// yet is bytes[offsets[i]] .. bytes[offsets[i + 1] - 1], and is decoded the first time it is
+// asked for. a snapshot's strings stay in its mapping until they are used
+class PackedStrings extends AbstractList<String> implements RandomAccess {
+	private final ByteBuffer bytes;
+	private final IntBuffer offsets;
+	// decoded strings, null where not decoded yet. threads that race on a slot decode the same
+	// immutable string, so the slots need no lock
+	private final String[] strings;
+
+	// list of strings that are all decoded already
+	PackedStrings(String[] strings) {
+		this(null, null, strings);
+	}
+
+	// list of the count strings packed in bytes at offsets, which holds count + 1 offsets
+	PackedStrings(ByteBuffer bytes, IntBuffer offsets, int count) {
+		this(bytes, offsets, new String[count]);
+	}
+
+	private PackedStrings(ByteBuffer bytes, IntBuffer offsets, String[] strings) {
+		this.bytes = bytes;
+		this.offsets = offsets;
+		this.strings = strings;
+	}
+
+	@Override
+	public String get(int i) {
+		String s = strings[i];
+		if (s == null) {
+			int from = offsets.get(i);
+			byte[] utf8 = new byte[offsets.get(i + 1) - from];
+			// a duplicate has its own position, so decoding threads do not interfere
+			ByteBuffer view = bytes.duplicate();
+			view.position(from);
+			view.get(utf8);
+			s = new String(utf8, StandardCharsets.UTF_8);
+			strings[i] = s;
+		}
+		return s;
+	}
+
+	@Override
+	public int size() {
+		return strings.length;
+	}
+
+	// copy of this list with extra[0 .. n - 1] appended; the packed strings are shared, not
+	// decoded
+	public PackedStrings with(String[] extra, int n) {
+		String[] grown = Arrays.copyOf(strings, strings.length + n);
+		System.arraycopy(extra, 0, grown, strings.length, n);
+		return new PackedStrings(bytes, offsets, grown);
+	}
+}
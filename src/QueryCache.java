@@ -0,0 +1,351 @@
+// bounded, thread-safe cache of SAP results keyed on an unordered pair of ints packed into a
+// long, see key. values are the packed (length, ancestor) results of SAP's search. entries,
+// their hash table and the eviction order all live in primitive arrays, so lookups neither
+// box nor allocate
+class QueryCache {
+	// returned by get on a miss; no packed result has a negative length
+	static final long MISS = Long.MIN_VALUE;
+	private static final int NONE = -1;
+
+	private final int capacity;
+	private final SAP.CacheEviction eviction;
+	// open addressing with linear probing: slot -> entry + 1, 0 for an empty slot; the length
+	// is a power of two at least twice the capacity
+	private final int[] table;
+	private final long[] keys;
+	private final long[] values;
+	// LRU: one list from the eldest entry to the most recently used.
+	// LFU: one list per group of entries with the same use count, oldest first
+	private final int[] prev;
+	private final int[] next;
+	private int size;
+	private int head = NONE;
+	private int tail = NONE;
+	// LFU: the groups, linked in ascending use count; unused groups are chained through
+	// groupNext from freeGroup
+	private int[] group;
+	private long[] groupCount;
+	private int[] groupHead;
+	private int[] groupTail;
+	private int[] groupPrev;
+	private int[] groupNext;
+	private int freeGroup;
+	private int minGroup = NONE;
+	private long hits;
+	private long misses;
+
+	public QueryCache(int capacity, SAP.CacheEviction eviction) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("cache capacity must be positive");
+		}
+		if (eviction == null) {
+			throw new NullPointerException("eviction policy cannot be null");
+		}
+		this.capacity = capacity;
+		this.eviction = eviction;
+		table = new int[Integer.highestOneBit(capacity) << 2];
+		keys = new long[capacity];
+		values = new long[capacity];
+		prev = new int[capacity];
+		next = new int[capacity];
+		if (eviction == SAP.CacheEviction.LFU) {
+			// moving an entry up creates its new group before the old one can empty
+			int groups = capacity + 1;
+			group = new int[capacity];
+			groupCount = new long[groups];
+			groupHead = new int[groups];
+			groupTail = new int[groups];
+			groupPrev = new int[groups];
+			groupNext = new int[groups];
+			for (int g = 0; g < groups; g++) {
+				groupNext[g] = g + 1 < groups ? g + 1 : NONE;
+			}
+		}
+	}
+
+	// copy of this cache without the entries whose key involves an affected int; the
+	// remaining entries keep their recency or use counts
+	public synchronized QueryCache without(boolean[] affected) {
+		QueryCache copy = new QueryCache(capacity, eviction);
+		if (eviction == SAP.CacheEviction.LRU) {
+			for (int e = head; e != NONE; e = next[e]) {
+				if (!involves(keys[e], affected)) {
+					copy.insert(keys[e], values[e]);
+					copy.append(copy.size - 1);
+				}
+			}
+			return copy;
+		}
+		int last = NONE;
+		for (int g = minGroup; g != NONE; g = groupNext[g]) {
+			for (int e = groupHead[g]; e != NONE; e = next[e]) {
+				if (!involves(keys[e], affected)) {
+					copy.insert(keys[e], values[e]);
+					if (last == NONE || copy.groupCount[last] != groupCount[g]) {
+						last = copy.newGroup(groupCount[g], last);
+					}
+					copy.appendToGroup(copy.size - 1, last);
+				}
+			}
+		}
+		return copy;
+	}
+
+	private static boolean involves(long key, boolean[] affected) {
+		int v = (int) (key >>> 32);
+		int w = (int) key;
+		return v < affected.length && affected[v] || w < affected.length && affected[w];
+	}
+
+	// cache key of the pair (v, w), the same for (w, v); both must be non-negative
+	public static long key(int v, int w) {
+		return v <= w ? ((long) v << 32) | w : ((long) w << 32) | v;
+	}
+
+	// cached result for the key, or MISS
+	public synchronized long get(long key) {
+		int e = find(key);
+		if (e == NONE) {
+			misses++;
+			return MISS;
+		}
+		hits++;
+		use(e);
+		return values[e];
+	}
+
+	public synchronized void put(long key, long result) {
+		int e = find(key);
+		if (e != NONE) {
+			values[e] = result;
+			use(e);
+			return;
+		}
+		if (size == capacity) {
+			evict();
+		}
+		insert(key, result);
+		e = size - 1;
+		if (eviction == SAP.CacheEviction.LRU) {
+			append(e);
+			return;
+		}
+		if (minGroup == NONE || groupCount[minGroup] != 1) {
+			newGroup(1, NONE);
+		}
+		appendToGroup(e, minGroup);
+	}
+
+	// the most recently used entry, or the entry one use count up
+	private void use(int e) {
+		if (eviction == SAP.CacheEviction.LRU) {
+			unlink(e);
+			append(e);
+			return;
+		}
+		int g = group[e];
+		int up = groupNext[g];
+		if (up == NONE || groupCount[up] != groupCount[g] + 1) {
+			up = newGroup(groupCount[g] + 1, g);
+		}
+		removeFromGroup(e);
+		appendToGroup(e, up);
+	}
+
+	// drop the eldest entry (LRU) or the oldest of the least used (LFU); its number is
+	// taken over by the last entry, so entries stay numbered 0 .. size - 1
+	private void evict() {
+		int e;
+		if (eviction == SAP.CacheEviction.LRU) {
+			e = head;
+			unlink(e);
+		} else {
+			e = groupHead[minGroup];
+			removeFromGroup(e);
+		}
+		removeSlot(keys[e]);
+		int last = --size;
+		if (e != last) {
+			move(last, e);
+		}
+	}
+
+	// renumber entry from as to, which is unused
+	private void move(int from, int to) {
+		keys[to] = keys[from];
+		values[to] = values[from];
+		prev[to] = prev[from];
+		next[to] = next[from];
+		if (prev[to] != NONE) {
+			next[prev[to]] = to;
+		}
+		if (next[to] != NONE) {
+			prev[next[to]] = to;
+		}
+		if (eviction == SAP.CacheEviction.LRU) {
+			if (head == from) {
+				head = to;
+			}
+			if (tail == from) {
+				tail = to;
+			}
+		} else {
+			int g = group[from];
+			group[to] = g;
+			if (groupHead[g] == from) {
+				groupHead[g] = to;
+			}
+			if (groupTail[g] == from) {
+				groupTail[g] = to;
+			}
+		}
+		table[slotOf(keys[to])] = to + 1;
+	}
+
+	// add an unlinked entry for the key as number size
+	private void insert(long key, long result) {
+		int e = size++;
+		keys[e] = key;
+		values[e] = result;
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = e + 1;
+	}
+
+	private int find(long key) {
+		int mask = table.length - 1;
+		for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			if (keys[table[slot] - 1] == key) {
+				return table[slot] - 1;
+			}
+		}
+		return NONE;
+	}
+
+	private int slotOf(long key) {
+		int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[table[slot] - 1] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	// empty the key's slot and shift back the entries of its probe run that can take it
+	private void removeSlot(long key) {
+		int mask = table.length - 1;
+		int hole = slotOf(key);
+		table[hole] = 0;
+		for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int home = hash(keys[table[slot] - 1]) & mask;
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				table[hole] = table[slot];
+				table[slot] = 0;
+				hole = slot;
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+
+	private void append(int e) {
+		prev[e] = tail;
+		next[e] = NONE;
+		if (tail == NONE) {
+			head = e;
+		} else {
+			next[tail] = e;
+		}
+		tail = e;
+	}
+
+	private void unlink(int e) {
+		if (prev[e] == NONE) {
+			head = next[e];
+		} else {
+			next[prev[e]] = next[e];
+		}
+		if (next[e] == NONE) {
+			tail = prev[e];
+		} else {
+			prev[next[e]] = prev[e];
+		}
+	}
+
+	// new empty group with the given use count, linked after the group before (NONE: first)
+	private int newGroup(long count, int before) {
+		int g = freeGroup;
+		freeGroup = groupNext[g];
+		groupCount[g] = count;
+		groupHead[g] = NONE;
+		groupTail[g] = NONE;
+		groupPrev[g] = before;
+		groupNext[g] = before == NONE ? minGroup : groupNext[before];
+		if (groupNext[g] != NONE) {
+			groupPrev[groupNext[g]] = g;
+		}
+		if (before == NONE) {
+			minGroup = g;
+		} else {
+			groupNext[before] = g;
+		}
+		return g;
+	}
+
+	private void appendToGroup(int e, int g) {
+		group[e] = g;
+		prev[e] = groupTail[g];
+		next[e] = NONE;
+		if (groupTail[g] == NONE) {
+			groupHead[g] = e;
+		} else {
+			next[groupTail[g]] = e;
+		}
+		groupTail[g] = e;
+	}
+
+	// unlink the entry from its group, and the group from the groups once it is empty
+	private void removeFromGroup(int e) {
+		int g = group[e];
+		if (prev[e] == NONE) {
+			groupHead[g] = next[e];
+		} else {
+			next[prev[e]] = next[e];
+		}
+		if (next[e] == NONE) {
+			groupTail[g] = prev[e];
+		} else {
+			prev[next[e]] = prev[e];
+		}
+		if (groupHead[g] != NONE) {
+			return;
+		}
+		if (groupPrev[g] == NONE) {
+			minGroup = groupNext[g];
+		} else {
+			groupNext[groupPrev[g]] = groupNext[g];
+		}
+		if (groupNext[g] != NONE) {
+			groupPrev[groupNext[g]] = groupPrev[g];
+		}
+		groupNext[g] = freeGroup;
+		freeGroup = g;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+}
@@ -1,65 +1,313 @@
+import java.util.Arrays;
+
 public class SAP {
 
-	private final Digraph g;
+	private final CompactDigraph g;
 	private static int INFINITE = Integer.MAX_VALUE;
+	// one search workspace per thread, so queries allocate nothing once warmed up
+	private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>();
+	// results of earlier queries; null when caching is off
+	private final QueryCache cache;
+	// precomputed ancestor labels; null until buildLabelIndex is called
+	private volatile AncestorLabels labels;
+
+	// how the query cache picks the entry to drop when it is full
+	public enum CacheEviction {
+		LRU, LFU
+	}
 
 	// constructor takes a digraph (not necessarily a DAG)
 	public SAP(Digraph G) {
-		g = new Digraph(G);
+		this(new CompactDigraph(G));
+	}
+
+	// remembers the results of up to cacheCapacity distinct single-vertex queries
+	public SAP(Digraph G, int cacheCapacity, CacheEviction eviction) {
+		this(new CompactDigraph(G), cacheCapacity, eviction);
+	}
+
+	// shares the given graph, which is immutable
+	SAP(CompactDigraph G) {
+		g = G;
+		cache = null;
+	}
+
+	SAP(CompactDigraph G, int cacheCapacity, CacheEviction eviction) {
+		this(G, new QueryCache(cacheCapacity, eviction));
+	}
+
+	private SAP(CompactDigraph G, QueryCache cache) {
+		g = G;
+		this.cache = cache;
+	}
+
+	// SAP over G, this graph with vertices or edges added, keeping the cached results and labels
+	// that do not involve an affected vertex. this SAP is left untouched for its current readers
+	SAP updated(CompactDigraph G, boolean[] affected) {
+		SAP updated = new SAP(G, cache == null ? null : cache.without(affected));
+		AncestorLabels index = labels;
+		if (index != null) {
+			updated.labels = index.without(affected, G.V());
+		}
+		return updated;
 	}
 
 	// length of shortest ancestral path between v and w; -1 if no such path
 	public int length(int v, int w) {
-		BreadthFirstDirectedPaths vBFS = new BreadthFirstDirectedPaths(g, v);
-		BreadthFirstDirectedPaths wBFS = new BreadthFirstDirectedPaths(g, w);
-		return length(vBFS, wBFS);
+		return length(search(v, w));
 	}
 
 	// a common ancestor of v and w that participates in a shortest ancestral path; -1 if no such path
 	public int ancestor(int v, int w) {
-		BreadthFirstDirectedPaths vBFS = new BreadthFirstDirectedPaths(g, v);
-		BreadthFirstDirectedPaths wBFS = new BreadthFirstDirectedPaths(g, w);
-		return ancestor(vBFS, wBFS);
+		return ancestor(search(v, w));
 	}
 
 	// length of shortest ancestral path between any vertex in v and any vertex in w; -1 if no such path
 	public int length(Iterable<Integer> v, Iterable<Integer> w) {
-		BreadthFirstDirectedPaths vBFS = new BreadthFirstDirectedPaths(g, v);
-		BreadthFirstDirectedPaths wBFS = new BreadthFirstDirectedPaths(g, w);
-		return length(vBFS, wBFS);
+		return length(search(v, w));
 	}
 
 	// a common ancestor that participates in shortest ancestral path; -1 if no such path
 	public int ancestor(Iterable<Integer> v, Iterable<Integer> w) {
-		BreadthFirstDirectedPaths vBFS = new BreadthFirstDirectedPaths(g, v);
-		BreadthFirstDirectedPaths wBFS = new BreadthFirstDirectedPaths(g, w);
-		return ancestor(vBFS, wBFS);
-	}
-
-	private int length(BreadthFirstDirectedPaths p1, BreadthFirstDirectedPaths p2) {
-		int minDist = INFINITE;
-		for (int i = 0; i < g.V(); i++) {
-			int distV = p1.distTo(i);
-			int distW = p2.distTo(i);
-			if (distV != INFINITE && distW != INFINITE && distV + distW < minDist) {
-				minDist = distV + distW;
+		return ancestor(search(v, w));
+	}
+
+	// length and ancestor of a shortest ancestral path between v and w, from a single search
+	public AncestralPath path(int v, int w) {
+		return new AncestralPath(search(v, w));
+	}
+
+	// length and ancestor of a shortest ancestral path between any vertex in v and any vertex in w
+	public AncestralPath path(Iterable<Integer> v, Iterable<Integer> w) {
+		return new AncestralPath(search(v, w));
+	}
+
+	// precompute the ancestors of every vertex with their distances so that queries merge two
+	// sorted labels instead of searching. vertices with more than maxLabelSize ancestors keep
+	// using BFS. the graph must be a DAG
+	public void buildLabelIndex(int maxLabelSize) {
+		labels = new AncestorLabels(g, maxLabelSize);
+	}
+
+	// heap used by the label index in bytes; 0 if there is none
+	public long labelIndexBytes() {
+		AncestorLabels index = labels;
+		return index == null ? 0 : index.bytes();
+	}
+
+	// number of vertices answered by BFS because they have no label: over the cap, or changed
+	// by an update since the index was built
+	public int unlabeledVertices() {
+		AncestorLabels index = labels;
+		return index == null ? g.V() : index.unlabeled();
+	}
+
+	// number of queries answered from the cache
+	public long cacheHits() {
+		return cache == null ? 0 : cache.hits();
+	}
+
+	// number of queries that had to be searched; 0 when caching is off
+	public long cacheMisses() {
+		return cache == null ? 0 : cache.misses();
+	}
+
+	private long search(int v, int w) {
+		long key = 0;
+		if (cache != null) {
+			key = QueryCache.key(v, w);
+			long cached = cache.get(key);
+			if (cached != QueryCache.MISS) {
+				return cached;
 			}
 		}
-		return minDist == INFINITE ? -1 : minDist;
+		AncestorLabels index = labels;
+		long result = index == null ? AncestorLabels.NOT_INDEXED : index.query(v, w);
+		if (result == AncestorLabels.NOT_INDEXED) {
+			Workspace ws = workspace();
+			ws.seedV(v);
+			ws.seedW(w);
+			result = search(ws);
+		}
+		if (cache != null) {
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	// vertex sets are not cached: their keys would have to be copied out on every query
+	private long search(Iterable<Integer> v, Iterable<Integer> w) {
+		if (labels != null) {
+			return search(toSortedSet(v), toSortedSet(w));
+		}
+		Workspace ws = workspace();
+		for (int s : v) {
+			ws.seedV(s);
+		}
+		for (int s : w) {
+			ws.seedW(s);
+		}
+		return search(ws);
+	}
+
+	private long search(int[] v, int[] w) {
+		return search(v, 0, v.length, w, 0, w.length);
+	}
+
+	// length of the shortest ancestral path between the vertices v[vFrom .. vTo - 1] and
+	// w[wFrom .. wTo - 1]; both ranges must be sorted and free of duplicates
+	int length(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+		return length(search(v, vFrom, vTo, w, wFrom, wTo));
+	}
+
+	// length and ancestor for the same ranges as above
+	AncestralPath path(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+		return new AncestralPath(search(v, vFrom, vTo, w, wFrom, wTo));
+	}
+
+	// packed result for the same ranges as above, never cached; see length(long) and ancestor(long)
+	long search(int[] v, int vFrom, int vTo, int[] w, int wFrom, int wTo) {
+		AncestorLabels index = labels;
+		long result = index == null ? AncestorLabels.NOT_INDEXED : index.query(v, vFrom, vTo, w, wFrom, wTo);
+		if (result == AncestorLabels.NOT_INDEXED) {
+			Workspace ws = workspace();
+			for (int i = vFrom; i < vTo; i++) {
+				ws.seedV(v[i]);
+			}
+			for (int i = wFrom; i < wTo; i++) {
+				ws.seedW(w[i]);
+			}
+			result = search(ws);
+		}
+		return result;
+	}
+
+	// distinct vertices in ascending order, the canonical form of a source set
+	private int[] toSortedSet(Iterable<Integer> vertices) {
+		int size = 0;
+		for (int i : vertices) {
+			size++;
+		}
+		int[] array = new int[size];
+		size = 0;
+		for (int i : vertices) {
+			array[size++] = i;
+		}
+		Arrays.sort(array);
+		int distinct = 0;
+		for (int i = 0; i < array.length; i++) {
+			if (i == 0 || array[i] != array[i - 1]) {
+				array[distinct++] = array[i];
+			}
+		}
+		return distinct == array.length ? array : Arrays.copyOf(array, distinct);
+	}
+
+	// the calling thread's workspace, reset for a new query
+	private Workspace workspace() {
+		Workspace ws = workspaces.get();
+		if (ws == null || ws.capacity() < g.V()) {
+			ws = new Workspace(g.V());
+			workspaces.set(ws);
+		}
+		ws.begin();
+		return ws;
 	}
 
-	private int ancestor(BreadthFirstDirectedPaths p1, BreadthFirstDirectedPaths p2) {
-		int minDist = INFINITE;
-		int ancestor = -1;
-		for (int i = 0; i < g.V(); i++) {
-			int distV = p1.distTo(i);
-			int distW = p2.distTo(i);
-			if (distV != INFINITE && distW != INFINITE && distV + distW < minDist) {
-				minDist = distV + distW;
-				ancestor = i;
+	// bidirectional BFS: both searches advance one level at a time and a side stops
+	// expanding once its next level can no longer beat the best ancestral length found.
+	// result is packed as (length << 32 | ancestor), see length(long) and ancestor(long)
+	private long search(Workspace ws) {
+		int best = ws.best;
+		int ancestor = ws.ancestor;
+		int levelV = 0, levelW = 0;
+		while (true) {
+			boolean expandV = ws.headV < ws.tailV && levelV + 1 < best;
+			boolean expandW = ws.headW < ws.tailW && levelW + 1 < best;
+			if (!expandV && !expandW) {
+				break;
 			}
+			// advance the shallower side; on a tie, the one with the smaller frontier
+			if (expandV && (!expandW || levelV < levelW
+					|| (levelV == levelW && ws.tailV - ws.headV <= ws.tailW - ws.headW))) {
+				int levelEnd = ws.tailV;
+				while (ws.headV < levelEnd) {
+					int x = ws.queueV[ws.headV++];
+					for (int e = g.adjStart(x); e < g.adjEnd(x); e++) {
+						int y = g.target(e);
+						if (ws.distV(y) != 0) {
+							continue;
+						}
+						ws.markV(y, levelV + 2);
+						int distW = ws.distW(y);
+						if (distW != 0 && levelV + distW < best) {
+							best = levelV + distW;
+							ancestor = y;
+						}
+					}
+				}
+				levelV++;
+			} else {
+				int levelEnd = ws.tailW;
+				while (ws.headW < levelEnd) {
+					int x = ws.queueW[ws.headW++];
+					for (int e = g.adjStart(x); e < g.adjEnd(x); e++) {
+						int y = g.target(e);
+						if (ws.distW(y) != 0) {
+							continue;
+						}
+						ws.markW(y, levelW + 2);
+						int distV = ws.distV(y);
+						if (distV != 0 && levelW + distV < best) {
+							best = levelW + distV;
+							ancestor = y;
+						}
+					}
+				}
+				levelW++;
+			}
+		}
+		return pack(best, ancestor);
+	}
+
+	// a search result as one long, so that queries need not allocate
+	static long pack(int length, int ancestor) {
+		return ((long) length << 32) | (ancestor & 0xffffffffL);
+	}
+
+	static int length(long result) {
+		int minDist = (int) (result >>> 32);
+		return minDist == INFINITE ? -1 : minDist;
+	}
+
+	static int ancestor(long result) {
+		return (int) result;
+	}
+
+	// immutable answer of a combined length and ancestor query
+	public static final class AncestralPath {
+		private final int length;
+		private final int ancestor;
+
+		AncestralPath(long result) {
+			length = SAP.length(result);
+			ancestor = SAP.ancestor(result);
+		}
+
+		// length of the shortest ancestral path; -1 if no such path
+		public int length() {
+			return length;
+		}
+
+		// a common ancestor on a shortest ancestral path; -1 if no such path
+		public int ancestor() {
+			return ancestor;
+		}
+
+		@Override
+		public String toString() {
+			return "AncestralPath [length=" + length + "; ancestor=" + ancestor + "]";
 		}
-		return ancestor;
 	}
 
 	// do unit testing of this class
@@ -69,9 +317,92 @@ public class SAP {
 		while (!StdIn.isEmpty()) {
 			int v = StdIn.readInt();
 			int w = StdIn.readInt();
-			int length = sap.length(v, w);
-			int ancestor = sap.ancestor(v, w);
-			StdOut.printf("length = %d, ancestor = %d\n", length, ancestor);
+			AncestralPath path = sap.path(v, w);
+			StdOut.printf("length = %d, ancestor = %d\n", path.length(), path.ancestor());
+		}
+	}
+
+	// preallocated BFS state for both sides of a query. dist entries hold distance + 1 (0 means
+	// not visited) and are only valid where stamp == epoch, so starting a new query is O(1).
+	// the two queues keep every vertex the query touched and serve as its dirty list.
+	private static class Workspace {
+		private final int[] stamp;
+		private final int[] distV;
+		private final int[] distW;
+		private final int[] queueV;
+		private final int[] queueW;
+		private int epoch;
+		private int headV, tailV, headW, tailW;
+		private int best, ancestor;
+
+		private Workspace(int V) {
+			stamp = new int[V];
+			distV = new int[V];
+			distW = new int[V];
+			queueV = new int[V];
+			queueW = new int[V];
+		}
+
+		private int capacity() {
+			return stamp.length;
+		}
+
+		private void begin() {
+			if (++epoch == Integer.MAX_VALUE) {
+				Arrays.fill(stamp, 0);
+				epoch = 1;
+			}
+			headV = tailV = headW = tailW = 0;
+			best = INFINITE;
+			ancestor = -1;
+		}
+
+		private void touch(int x) {
+			if (stamp[x] != epoch) {
+				stamp[x] = epoch;
+				distV[x] = 0;
+				distW[x] = 0;
+			}
+		}
+
+		private int distV(int x) {
+			return stamp[x] == epoch ? distV[x] : 0;
+		}
+
+		private int distW(int x) {
+			return stamp[x] == epoch ? distW[x] : 0;
+		}
+
+		private void markV(int x, int dist) {
+			touch(x);
+			distV[x] = dist;
+			queueV[tailV++] = x;
+		}
+
+		private void markW(int x, int dist) {
+			touch(x);
+			distW[x] = dist;
+			queueW[tailW++] = x;
+		}
+
+		private void seedV(int s) {
+			if (distV(s) == 0) {
+				markV(s, 1);
+				if (distW(s) != 0) {
+					best = 0;
+					ancestor = s;
+				}
+			}
+		}
+
+		private void seedW(int s) {
+			if (distW(s) == 0) {
+				markW(s, 1);
+				if (distV(s) != 0) {
+					best = 0;
+					ancestor = s;
+				}
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -1,198 +1,700 @@
 import java.awt.Color;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class SeamCarver {
+	// the low 24 bits of a buffer pixel are its colour, the high bits its mask
+	private static final int RGB = 0xffffff;
+	private static final int PROTECTED = 1 << 24;
+	private static final int REMOVED = 1 << 25;
+	// per buffer row, more than any pixel's energy plus edge cost
+	private static final double ROW_WEIGHT = 0x1p32;
+	// in parallel mode, cells handled by one fork-join task of the energy map; smaller
+	// pictures are computed on the calling thread
+	private static final int PARALLEL_THRESHOLD = 1 << 12;
+	// in parallel mode the seam search splits the columns into one strip per pool thread, but
+	// none narrower than MIN_STRIP, and relaxes BAND_ROWS rows of every strip between joins
+	private static final int MIN_STRIP = 512;
+	private static final int BAND_ROWS = 32;
+	// pixels as packed RGB ints, row-major: the pixel in buffer row r and column c is
+	// pixels[r * stride + c]. when transposed is set the buffer holds the transposed image,
+	// so that horizontal seams are found and removed as vertical seams of the buffer. the
+	// buffer is only transposed when the seam direction changes
+	private int[] pixels;
+	private int rows;
+	private int cols;
+	private int stride;
+	private boolean transposed;
+	// energy of the pixel at the same buffer position
+	private final EnergyFunction energyFunction;
+	private int[] energyArray;
+	// the other orientation's buffers, kept so that transposing does not allocate
+	private int[] sparePixels;
+	private int[] spareEnergy;
+	// shortest-path state of the seam search, allocated once and reused. it stays valid across
+	// seam removals, which only repair the part below the removed seam
+	private double[] distTo;
+	private byte[] lastEdge;
+	private boolean distToValid;
+	// taken off the cost of a pixel to remove: more than a seam without such pixels can cost,
+	// so a seam through more of them is always cheaper. protected pixels cost infinity
+	private double removalWeight;
+	// whether the energy function adds a cost per edge, see EnergyFunction.edgeCost
+	private final boolean edgeCosts;
+	// the current picture, built on demand; null when the pixels changed since
 	private Picture picture;
-	private double[][] energyArray;
+	private boolean parallel;
+
+	// order in which resize removes vertical and horizontal seams
+	public enum SeamOrder {
+		// all vertical seams, then all horizontal ones: the buffers are transposed at most once
+		VERTICAL_FIRST,
+		// all horizontal seams, then all vertical ones
+		HORIZONTAL_FIRST,
+		// one of each in turn while both directions have seams left
+		ALTERNATE
+	}
+
+	// pixel masks: seams avoid protected pixels and go through pixels to remove
+	public enum Mask {
+		NONE, PROTECT, REMOVE
+	}
 
 	// create a seam carver object based on the given picture
 	public SeamCarver(Picture picture) {
-		reset(picture);
+		this(picture, EnergyFunction.DUAL_GRADIENT, false);
 	}
 
-	private void reset(Picture picture) {
-		this.picture = picture;
-		energyArray = new double[height()][width()];
+	// seam carver that computes the energies and searches seams on the common fork-join pool
+	// if parallel is set, see setParallel
+	public SeamCarver(Picture picture, boolean parallel) {
+		this(picture, EnergyFunction.DUAL_GRADIENT, parallel);
+	}
 
-		for (int h = 0; h < height(); h++) {
-			for (int w = 0; w < width(); w++) {
-				double energy = energy(w, h);
-				energyArray[h][w] = energy;
+	// seam carver with the given energy function
+	public SeamCarver(Picture picture, EnergyFunction energyFunction) {
+		this(picture, energyFunction, false);
+	}
+
+	public SeamCarver(Picture picture, EnergyFunction energyFunction, boolean parallel) {
+		if (picture == null || energyFunction == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		this.energyFunction = energyFunction;
+		this.parallel = parallel;
+		edgeCosts = energyFunction.hasEdgeCosts();
+		cols = picture.width();
+		rows = picture.height();
+		stride = cols;
+		pixels = new int[rows * cols];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				pixels[r * stride + c] = picture.get(c, r).getRGB() & RGB;
 			}
 		}
+		energyArray = new int[rows * cols];
+		computeEnergies();
+		distTo = new double[rows * cols];
+		lastEdge = new byte[rows * cols];
+	}
+
+	// split every row of the seam search, and the energy computation, across the common
+	// fork-join pool. each cell is computed exactly as in serial mode, so seams are the same
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	// mask the pixel at column x and row y
+	public void setMask(int x, int y, Mask mask) {
+		if (mask == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		if (x < 0 || x >= width() || y < 0 || y >= height()) {
+			throw new IndexOutOfBoundsException();
+		}
+		int r = transposed ? x : y;
+		int c = transposed ? y : x;
+		int i = r * stride + c;
+		pixels[i] &= RGB;
+		if (mask == Mask.PROTECT) {
+			pixels[i] |= PROTECTED;
+		} else if (mask == Mask.REMOVE) {
+			pixels[i] |= REMOVED;
+		}
+		// the mask only changes the pixel's cost in the seam search, not its energy
+		distToValid = false;
 	}
 
 	// current picture
 	public Picture picture() {
+		if (picture == null) {
+			Picture current = new Picture(width(), height());
+			for (int r = 0; r < rows; r++) {
+				for (int c = 0; c < cols; c++) {
+					Color color = new Color(pixels[r * stride + c]);
+					if (transposed) {
+						current.set(r, c, color);
+					} else {
+						current.set(c, r, color);
+					}
+				}
+			}
+			picture = current;
+		}
 		return picture;
 	}
 
 	// width of current picture
 	public int width() {
-		return picture.width();
+		return transposed ? rows : cols;
 	}
 
 	// height of current picture
 	public int height() {
-		return picture.height();
+		return transposed ? cols : rows;
 	}
 
-	// energy of pixel at column x and row y
+	// energy of pixel at column x and row y. for an energy function that is not symmetric this
+	// is always the energy for vertical seams, whichever seam direction was used last
 	public double energy(int x, int y) {
 		if (x < 0 || x >= width() || y < 0 || y >= height()) {
 			throw new IndexOutOfBoundsException();
 		}
-		// border pixels have 3*255^2
-		if (x == 0 || x == picture.width() - 1 || y == 0 || y == picture.height() - 1) {
-			return 3 * (0xff * 0xff);
-		} else {
-			return deltaX(x, y) + deltaY(x, y);
+		if (!transposed) {
+			return energyArray[y * stride + x];
 		}
+		if (energyFunction.symmetric()) {
+			return energyArray[x * stride + y];
+		}
+		// the transposed buffer holds the energies for horizontal seams. the energy only reads
+		// the 3x3 neighbourhood of the pixel, so compute it from that neighbourhood turned back
+		// to picture orientation
+		int top = Math.max(y - 1, 0);
+		int bottom = Math.min(y + 2, height());
+		int left = Math.max(x - 1, 0);
+		int right = Math.min(x + 2, width());
+		int width = right - left;
+		int[] window = new int[(bottom - top) * width];
+		for (int wy = top; wy < bottom; wy++) {
+			for (int wx = left; wx < right; wx++) {
+				window[(wy - top) * width + wx - left] = pixels[wx * stride + wy];
+			}
+		}
+		return energyFunction.energy(window, width, bottom - top, width, y - top, x - left);
 	}
 
-	private double deltaX(int x, int y) {
-		Color color1 = picture.get(x - 1, y);
-		Color color2 = picture.get(x + 1, y);
-		return delta(color1, color2);
+	// energy of the pixel in buffer row r and column c
+	private int computeEnergy(int r, int c) {
+		return energyFunction.energy(pixels, stride, rows, cols, r, c);
 	}
 
-	private double deltaY(int x, int y) {
-		Color color1 = picture.get(x, y - 1);
-		Color color2 = picture.get(x, y + 1);
-		return delta(color1, color2);
+	// cost of a seam through buffer position i: the energy, lowered by removalWeight for a
+	// pixel to remove and infinite for a protected one, so that no seam crosses it while
+	// another seam can avoid it
+	private double cost(int i) {
+		int pixel = pixels[i];
+		if (pixel <= RGB) {
+			return energyArray[i];
+		}
+		if ((pixel & PROTECTED) != 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return energyArray[i] - removalWeight;
+	}
+
+	private void computeEnergies() {
+		if (parallel && rows * cols >= 2 * PARALLEL_THRESHOLD) {
+			ForkJoinPool.commonPool().invoke(new EnergyTask(0, rows));
+		} else {
+			computeEnergies(0, rows);
+		}
 	}
 
-	private double delta(Color color1, Color color2) {
-		int redDiff = color1.getRed() - color2.getRed();
-		int blueDiff = color1.getBlue() - color2.getBlue();
-		int greenDiff = color1.getGreen() - color2.getGreen();
-		return redDiff * redDiff + blueDiff * blueDiff + greenDiff * greenDiff;
+	private void computeEnergies(int fromRow, int toRow) {
+		for (int r = fromRow; r < toRow; r++) {
+			energyFunction.energies(pixels, stride, rows, cols, r, energyArray);
+		}
 	}
 
 	// sequence of indices for horizontal seam
 	public int[] findHorizontalSeam() {
-		return findVerticalSP(true);
+		orient(true);
+		return findVerticalSP();
 	}
 
 	// sequence of indices for vertical seam
 	public int[] findVerticalSeam() {
-		return findVerticalSP(false);
+		orient(false);
+		return findVerticalSP();
 	}
 
-	// arg is row number
-	private int[] findVerticalSP(boolean transpose) {
-		int height = height(), width = width();
-		if (transpose) {
-			height = width();
-			width = height();
-		}
-
-		double[][] distTo = new double[height][width];
-		int[][] lastEdge = new int[height][width];
-		// init distTo. the 1st row has distTo=0
-		for (int c = 0; c < width; c++) {
-			distTo[0][c] = 0d;
+	// transpose the buffers if they are not in the requested orientation
+	private void orient(boolean transpose) {
+		if (transposed == transpose) {
+			return;
 		}
-		for (int r = 1; r < height; r++) {
-			for (int c = 0; c < width; c++) {
-				distTo[r][c] = Double.MAX_VALUE;
-			}
+		if (sparePixels == null) {
+			sparePixels = new int[pixels.length];
+			spareEnergy = new int[energyArray.length];
 		}
-
-		int row = 0;
-		while (++row != height) {
-			// edge: [0]:from [1]:to
-			// relax edges from previous layers that point to current layer
-			for (int v = 0; v < width; v++) {
-				double newDistUL = v > 0 ? distTo[row - 1][v - 1] + getEnergy(row, v, transpose) : Double.MAX_VALUE;
-				if (newDistUL < distTo[row][v]) {
-					distTo[row][v] = newDistUL;
-					lastEdge[row][v] = v-1;
-				}
-				double newDistU = distTo[row - 1][v] + getEnergy(row, v, transpose);
-				if (newDistU < distTo[row][v]) {
-					distTo[row][v] = newDistU;
-					lastEdge[row][v] = v;
-				}
-				double newDistUR = v < width - 1 ? distTo[row - 1][v + 1] + getEnergy(row, v, transpose)
-						: Double.MAX_VALUE;
-				if (newDistUR < distTo[row][v]) {
-					distTo[row][v] = newDistUR;
-					lastEdge[row][v] = v+1;
+		// buffer (r, c) moves to (c, r), packed with stride = rows
+		boolean symmetric = energyFunction.symmetric();
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				sparePixels[c * rows + r] = pixels[r * stride + c];
+				if (symmetric) {
+					spareEnergy[c * rows + r] = energyArray[r * stride + c];
 				}
 			}
 		}
+		int[] swapPixels = pixels;
+		pixels = sparePixels;
+		sparePixels = swapPixels;
+		int[] swapEnergy = energyArray;
+		energyArray = spareEnergy;
+		spareEnergy = swapEnergy;
+		int swap = rows;
+		rows = cols;
+		cols = swap;
+		stride = cols;
+		transposed = transpose;
+		distToValid = false;
+		if (!symmetric) {
+			computeEnergies();
+		}
+	}
+
+	// vertical seam of the buffer: the column of the seam in each buffer row
+	private int[] findVerticalSP() {
+		computeVerticalSP();
 
 		// return seam
+		int last = (rows - 1) * stride;
 		int selectedC = Integer.MAX_VALUE;
-		double shortestDist = Double.MAX_VALUE;
-		for (int c = 0; c < width; c++) {
-			if (Double.compare(distTo[height - 1][c], shortestDist) < 1) {
+		double shortestDist = Double.POSITIVE_INFINITY;
+		for (int c = 0; c < cols; c++) {
+			if (Double.compare(distTo[last + c], shortestDist) < 1) {
 				selectedC = c;
-				shortestDist = distTo[height - 1][c];
+				shortestDist = distTo[last + c];
 			}
 		}
+		int[] path = new int[rows];
 		int prevCol = selectedC;
-		int[] path = new int[height];
-		for (int h = height - 1; h >= 0; h--) {
-			path[h] = prevCol;
-			prevCol = lastEdge[h][prevCol];
+		for (int r = rows - 1; r >= 0; r--) {
+			path[r] = prevCol;
+			prevCol += lastEdge[r * stride + prevCol];
 		}
 		return path;
 	}
-	
-	private double getEnergy(int x, int y, boolean transpose) {
-		return transpose ? energyArray[y][x] : energyArray[x][y];
+
+	// fill distTo and lastEdge for the current buffer unless they are still valid
+	private void computeVerticalSP() {
+		if (!distToValid) {
+			removalWeight = rows * ROW_WEIGHT;
+			// the 1st row has distTo=its cost. with the dual gradient that is the same border
+			// energy for every column, but other energies and masks vary along the row
+			for (int c = 0; c < cols; c++) {
+				distTo[c] = cost(c);
+			}
+			int strips = parallel ? Math.min(ForkJoinPool.getCommonPoolParallelism(), cols / MIN_STRIP) : 1;
+			if (strips > 1) {
+				int stripWidth = (cols + strips - 1) / strips;
+				for (int r0 = 0; r0 < rows - 1; r0 += BAND_ROWS) {
+					ForkJoinPool.commonPool().invoke(
+							new RelaxTask(r0, Math.min(r0 + BAND_ROWS, rows - 1), 0, strips, stripWidth));
+				}
+			} else {
+				for (int r = 1; r < rows; r++) {
+					for (int c = 0; c < cols; c++) {
+						relax(r, c);
+					}
+				}
+			}
+			distToValid = true;
+		}
+	}
+
+	// relax edges from the previous row that point to buffer cell (r, c); on ties the
+	// upper-left edge wins over the upper one, which wins over the upper-right one
+	private void relax(int r, int c) {
+		int prev = (r - 1) * stride + c;
+		int edge = bestEdge(distTo, prev, r, c);
+		distTo[r * stride + c] = distTo[prev + edge] + edgeCost(r, c, edge) + cost(r * stride + c);
+		lastEdge[r * stride + c] = (byte) edge;
 	}
 
-	// remove horizontal seam from current picture
-	public void removeHorizontalSeam(int[] seam) {
-		validateRemovalArg(seam, false);
-		Picture newPic = new Picture(width(), height() - 1);
-		int oldRow;
-		for (int col = 0; col < newPic.width(); col++) {
-			oldRow = 0;
-			for (int row = 0; row < newPic.height(); row++) {
-				if (seam[col] == row) {
-					oldRow++;
+	// the edge into buffer cell (r, c), with the distance of its upper parent at above[i]:
+	// -1 for the upper-left parent, 0 for the upper and 1 for the upper-right one
+	private int bestEdge(double[] above, int i, int r, int c) {
+		double best = above[i] + edgeCost(r, c, 0);
+		int edge = 0;
+		if (c > 0) {
+			double upperLeft = above[i - 1] + edgeCost(r, c, -1);
+			if (upperLeft <= best) {
+				best = upperLeft;
+				edge = -1;
+			}
+		}
+		if (c < cols - 1 && above[i + 1] + edgeCost(r, c, 1) < best) {
+			edge = 1;
+		}
+		return edge;
+	}
+
+	private int edgeCost(int r, int c, int edge) {
+		return edgeCosts ? energyFunction.edgeCost(pixels, stride, rows, cols, r, c, edge) : 0;
+	}
+
+	// relax rows r0 + 1 .. r1 of columns lo .. hi - 1 from row r0 alone. row r needs row r - 1
+	// one column wider on each side, so the strip computes a trapezoid that starts r1 - r0
+	// columns wider on each side and narrows to its own columns. the halo lives in two local
+	// rows and only the strip's own columns are written, so strips of a band never wait for
+	// each other
+	private void relaxStrip(int r0, int r1, int lo, int hi) {
+		int from = Math.max(lo - (r1 - r0), 0);
+		int to = Math.min(hi + (r1 - r0), cols);
+		double[] above = new double[to - from];
+		double[] below = new double[to - from];
+		System.arraycopy(distTo, r0 * stride + from, above, 0, to - from);
+		for (int r = r0 + 1; r <= r1; r++) {
+			int left = Math.max(lo - (r1 - r), 0);
+			int right = Math.min(hi + (r1 - r), cols);
+			for (int c = left; c < right; c++) {
+				int i = c - from;
+				int edge = bestEdge(above, i, r, c);
+				below[i] = above[i + edge] + edgeCost(r, c, edge) + cost(r * stride + c);
+				if (c >= lo && c < hi) {
+					distTo[r * stride + c] = below[i];
+					lastEdge[r * stride + c] = (byte) edge;
+				}
+			}
+			double[] t = above;
+			above = below;
+			below = t;
+		}
+	}
+
+	// relaxes one band of rows, r0 + 1 .. r1, for strips lo .. hi - 1 of stripWidth columns
+	private class RelaxTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int r0;
+		private final int r1;
+		private final int lo;
+		private final int hi;
+		private final int stripWidth;
+
+		private RelaxTask(int r0, int r1, int lo, int hi, int stripWidth) {
+			this.r0 = r0;
+			this.r1 = r1;
+			this.lo = lo;
+			this.hi = hi;
+			this.stripWidth = stripWidth;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) {
+				relaxStrip(r0, r1, lo * stripWidth, Math.min((lo + 1) * stripWidth, cols));
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new RelaxTask(r0, r1, lo, mid, stripWidth), new RelaxTask(r0, r1, mid, hi, stripWidth));
+		}
+	}
+
+	// computes the energies of buffer rows lo .. hi - 1 in bands of about PARALLEL_THRESHOLD pixels
+	private class EnergyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int lo;
+		private final int hi;
+
+		private EnergyTask(int lo, int hi) {
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= 1 || (hi - lo) * cols <= PARALLEL_THRESHOLD) {
+				computeEnergies(lo, hi);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new EnergyTask(lo, mid), new EnergyTask(mid, hi));
+		}
+	}
+
+	// repair distTo after the seam was removed and the rows were shifted. a cell has to be
+	// relaxed again if its energy changed (within reach of the seam), if one of its parents was
+	// removed or if a parent's distance changed; the last set grows by at most one column per
+	// row, and stops growing where a relaxed cell ends up with its old distance
+	private void repairVerticalSP(int[] seam) {
+		int reach = energyFunction.reach();
+		int changedLo = Integer.MAX_VALUE;
+		int changedHi = -1;
+		for (int c = Math.max(seam[0] - reach, 0); c < Math.min(seam[0] + reach, cols); c++) {
+			if (distTo[c] != cost(c)) {
+				distTo[c] = cost(c);
+				changedLo = Math.min(changedLo, c);
+				changedHi = c;
+			}
+		}
+		for (int r = 1; r < rows; r++) {
+			int from = Math.min(seam[r - 1] - 1, seam[r] - reach);
+			int to = Math.max(seam[r - 1], seam[r] + reach - 1);
+			if (changedLo <= changedHi) {
+				from = Math.min(from, changedLo - 1);
+				to = Math.max(to, changedHi + 1);
+			}
+			from = Math.max(from, 0);
+			to = Math.min(to, cols - 1);
+			changedLo = Integer.MAX_VALUE;
+			changedHi = -1;
+			for (int c = from; c <= to; c++) {
+				double old = distTo[r * stride + c];
+				relax(r, c);
+				if (distTo[r * stride + c] != old) {
+					changedLo = Math.min(changedLo, c);
+					changedHi = c;
 				}
-				newPic.set(col, row, picture.get(col, oldRow));
-				oldRow++;
 			}
 		}
-		reset(newPic);
+	}
+
+	// remove horizontal seam from current picture
+	public void removeHorizontalSeam(int[] seam) {
+		validateRemovalArg(seam, false);
+		orient(true);
+		removeVerticalSP(seam);
 	}
 
 	// remove vertical seam from current picture
 	public void removeVerticalSeam(int[] seam) {
 		validateRemovalArg(seam, true);
-		Picture newPic = new Picture(width() - 1, height());
-		int oldCol;
-		for (int row = 0; row < newPic.height(); row++) {
-			oldCol = 0;
-			for (int col = 0; col < newPic.width(); col++) {
-				if (seam[row] == col) {
-					oldCol++;
+		orient(false);
+		removeVerticalSP(seam);
+	}
+
+	// remove seams until the picture is width x height, vertical seams first
+	public void resize(int width, int height) {
+		resize(width, height, SeamOrder.VERTICAL_FIRST);
+	}
+
+	// remove seams until the picture is width x height, in the given order. each seam only
+	// repairs the part of the seam search below the seam removed before it, and the picture
+	// is built once, when picture() is next called
+	public void resize(int width, int height, SeamOrder order) {
+		if (order == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		if (width < 1 || width > width() || height < 1 || height > height()) {
+			throw new IllegalArgumentException("target size must be between 1x1 and the current size");
+		}
+		boolean vertical = order != SeamOrder.HORIZONTAL_FIRST;
+		while (width() > width || height() > height) {
+			if (width() == width) {
+				vertical = false;
+			} else if (height() == height) {
+				vertical = true;
+			}
+			orient(!vertical);
+			removeVerticalSP(findVerticalSP());
+			if (order == SeamOrder.ALTERNATE) {
+				vertical = !vertical;
+			}
+		}
+	}
+
+	// enlarge the picture by k columns, duplicating the k lowest-energy vertical seams
+	public void insertVerticalSeams(int k) {
+		validateInsertionArg(k);
+		orient(false);
+		insertVerticalSP(k);
+	}
+
+	// enlarge the picture by k rows, duplicating the k lowest-energy horizontal seams
+	public void insertHorizontalSeams(int k) {
+		validateInsertionArg(k);
+		orient(true);
+		insertVerticalSP(k);
+	}
+
+	// insert k vertical seams into the buffer. one seam search yields up to cols seams that
+	// do not share a pixel: the bottom cells are taken in order of distance and traced back,
+	// and a seam whose parent is already taken detours to the closest free parent, or is
+	// dropped if there is none. more than that many seams take further passes
+	private void insertVerticalSP(int k) {
+		while (k > 0) {
+			computeVerticalSP();
+			int[] bottom = bottomOrder();
+
+			boolean[] taken = new boolean[rows * stride];
+			int[] path = new int[rows];
+			int found = 0;
+			for (int i = 0; i < cols && found < k; i++) {
+				if (traceSeam(bottom[i], taken, path)) {
+					for (int r = 0; r < rows; r++) {
+						taken[r * stride + path[r]] = true;
+					}
+					found++;
+				}
+			}
+			duplicate(taken, found);
+			k -= found;
+		}
+	}
+
+	// the columns of the bottom row in order of distance, the rightmost of equal seams first
+	// as in findVerticalSP: a bottom-up merge sort, which is stable, of the columns listed
+	// from right to left
+	private int[] bottomOrder() {
+		int last = (rows - 1) * stride;
+		int[] order = new int[cols];
+		for (int i = 0; i < cols; i++) {
+			order[i] = cols - 1 - i;
+		}
+		int[] merged = new int[cols];
+		for (int width = 1; width < cols; width *= 2) {
+			for (int lo = 0; lo + width < cols; lo += 2 * width) {
+				int mid = lo + width;
+				int hi = Math.min(lo + 2 * width, cols);
+				int i = lo;
+				int j = mid;
+				for (int k = lo; k < hi; k++) {
+					if (j == hi || i < mid && distTo[last + order[i]] <= distTo[last + order[j]]) {
+						merged[k] = order[i++];
+					} else {
+						merged[k] = order[j++];
+					}
+				}
+				System.arraycopy(merged, lo, order, lo, hi - lo);
+			}
+		}
+		return order;
+	}
+
+	// trace the seam ending at bottom column c back into path, avoiding taken pixels
+	private boolean traceSeam(int c, boolean[] taken, int[] path) {
+		if (taken[(rows - 1) * stride + c]) {
+			return false;
+		}
+		for (int r = rows - 1; r > 0; r--) {
+			path[r] = c;
+			int prev = (r - 1) * stride;
+			int parent = c + lastEdge[r * stride + c];
+			if (taken[prev + parent]) {
+				parent = -1;
+				for (int p = Math.max(c - 1, 0); p <= Math.min(c + 1, cols - 1); p++) {
+					if (!taken[prev + p] && (parent == -1 || distTo[prev + p] < distTo[prev + parent])) {
+						parent = p;
+					}
+				}
+				if (parent == -1) {
+					return false;
 				}
-				newPic.set(col, row, picture.get(oldCol, row));
-				oldCol++;
 			}
+			c = parent;
+		}
+		path[0] = c;
+		return true;
+	}
+
+	// widen every buffer row by count pixels: each taken pixel is followed by the average of
+	// itself and its right neighbour, with the mask of the taken pixel
+	private void duplicate(boolean[] taken, int count) {
+		int newCols = cols + count;
+		int[] newPixels = new int[rows * newCols];
+		for (int r = 0; r < rows; r++) {
+			int to = r * newCols;
+			for (int c = 0; c < cols; c++) {
+				int rgb = pixels[r * stride + c];
+				newPixels[to++] = rgb;
+				if (taken[r * stride + c]) {
+					newPixels[to++] = c < cols - 1 ? average(rgb, pixels[r * stride + c + 1]) : rgb;
+				}
+			}
+		}
+		pixels = newPixels;
+		cols = newCols;
+		stride = newCols;
+		energyArray = new int[pixels.length];
+		computeEnergies();
+		distTo = new double[pixels.length];
+		lastEdge = new byte[pixels.length];
+		distToValid = false;
+		sparePixels = null;
+		spareEnergy = null;
+		picture = null;
+	}
+
+	private static int average(int rgb1, int rgb2) {
+		int red = (((rgb1 >> 16) & 0xff) + ((rgb2 >> 16) & 0xff)) / 2;
+		int green = (((rgb1 >> 8) & 0xff) + ((rgb2 >> 8) & 0xff)) / 2;
+		int blue = ((rgb1 & 0xff) + (rgb2 & 0xff)) / 2;
+		return (rgb1 & ~RGB) | (red << 16) | (green << 8) | blue;
+	}
+
+	// remove a vertical seam of the buffer
+	private void removeVerticalSP(int[] seam) {
+		// shift the pixels, energies and seam search state right of the seam left a column
+		cols--;
+		for (int r = 0; r < rows; r++) {
+			int from = r * stride + seam[r];
+			System.arraycopy(pixels, from + 1, pixels, from, cols - seam[r]);
+			System.arraycopy(energyArray, from + 1, energyArray, from, cols - seam[r]);
+			if (distToValid) {
+				System.arraycopy(distTo, from + 1, distTo, from, cols - seam[r]);
+				System.arraycopy(lastEdge, from + 1, lastEdge, from, cols - seam[r]);
+			}
+		}
+		picture = null;
+
+		// only the pixels close to the removed one have new neighbours, every other energy
+		// is unchanged
+		int reach = energyFunction.reach();
+		for (int r = 0; r < rows; r++) {
+			for (int c = seam[r] - reach; c < seam[r] + reach; c++) {
+				recomputeEnergy(r, c);
+			}
+		}
+		if (distToValid) {
+			repairVerticalSP(seam);
+		}
+	}
+
+	private void recomputeEnergy(int r, int c) {
+		if (c >= 0 && c < cols) {
+			energyArray[r * stride + c] = computeEnergy(r, c);
+		}
+	}
+
+	private void validateInsertionArg(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("number of seams cannot be negative");
 		}
-		reset(newPic);
 	}
 
 	private void validateRemovalArg(int[] seam, boolean isVertical) {
 		if (seam == null) {
 			throw new NullPointerException("arg cannot be null");
 		}
+		// a seam can only be removed while the picture is at least 2 pixels across it
 		if (!isVertical) {
-			if (seam.length != width() || width() <= 1) {
+			if (seam.length != width() || height() <= 1) {
 				throw new IllegalArgumentException("arg array has invalid size");
 			}
 		} else {
-			if (seam.length != height() || height() <= 1) {
+			if (seam.length != height() || width() <= 1) {
 				throw new IllegalArgumentException("arg array has invalid size");
 			}
 		}
+		// a vertical seam holds columns, a horizontal one rows
+		int range = isVertical ? width() : height();
+		for (int i = 0; i < seam.length; i++) {
+			if (seam[i] < 0 || seam[i] >= range) {
+				throw new IllegalArgumentException("entry out of range");
+			}
+		}
 		for (int i = 0; i < seam.length - 1; i++) {
 			if (Math.abs(seam[i] - seam[i + 1]) > 1) {
 				throw new IllegalArgumentException("adjacent entries differ by more than 1");
@@ -0,0 +1,56 @@
+// squared Sobel gradient, gx^2 + gy^2 summed over the colour channels. the 3x3 kernel reads
+// outside the buffer by repeating the nearest border pixel
+class SobelEnergy implements EnergyFunction {
+
+	@Override
+	public int energy(int[] pixels, int stride, int rows, int cols, int r, int c) {
+		int up = Math.max(r - 1, 0) * stride;
+		int mid = r * stride;
+		int down = Math.min(r + 1, rows - 1) * stride;
+		int left = Math.max(c - 1, 0);
+		int right = Math.min(c + 1, cols - 1);
+		int energy = 0;
+		for (int shift = 16; shift >= 0; shift -= 8) {
+			int ul = (pixels[up + left] >> shift) & 0xff;
+			int u = (pixels[up + c] >> shift) & 0xff;
+			int ur = (pixels[up + right] >> shift) & 0xff;
+			int l = (pixels[mid + left] >> shift) & 0xff;
+			int rt = (pixels[mid + right] >> shift) & 0xff;
+			int dl = (pixels[down + left] >> shift) & 0xff;
+			int d = (pixels[down + c] >> shift) & 0xff;
+			int dr = (pixels[down + right] >> shift) & 0xff;
+			int gx = (ur + 2 * rt + dr) - (ul + 2 * l + dl);
+			int gy = (dl + 2 * d + dr) - (ul + 2 * u + ur);
+			energy += gx * gx + gy * gy;
+		}
+		return energy;
+	}
+
+	@Override
+	public void energies(int[] pixels, int stride, int rows, int cols, int r, int[] energy) {
+		for (int c = 0; c < cols; c++) {
+			energy[r * stride + c] = energy(pixels, stride, rows, cols, r, c);
+		}
+	}
+
+	@Override
+	public int edgeCost(int[] pixels, int stride, int rows, int cols, int r, int c, int edge) {
+		return 0;
+	}
+
+	@Override
+	public boolean hasEdgeCosts() {
+		return false;
+	}
+
+	@Override
+	public boolean symmetric() {
+		return true;
+	}
+
+	// the kernel's diagonal taps reach one column further than the seam moves between rows
+	@Override
+	public int reach() {
+		return 2;
+	}
+}
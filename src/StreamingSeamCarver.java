@@ -0,0 +1,434 @@
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// seam carver for pictures larger than the heap. pixels, energies and the seam search's back
+// pointers live in memory-mapped temporary files; the heap holds two rows of distances and a
+// band of about BAND_PIXELS pixels at a time. seams are the same as SeamCarver's for the same
+// energy function. the energy function must read at most the 3x3 neighbourhood of the pixel
+public class StreamingSeamCarver implements Closeable {
+	// pixels per band of rows loaded into the heap
+	private static final int BAND_PIXELS = 1 << 20;
+	// side of the square tiles in which the buffers are transposed
+	private static final int TILE = 256;
+	private final EnergyFunction energyFunction;
+	// packed RGB ints of the buffer, row-major with stride ints per row. as in SeamCarver, the
+	// buffer holds the transposed picture while horizontal seams are carved
+	private MappedFile pixels;
+	private MappedFile energies;
+	// the other orientation's files
+	private MappedFile sparePixels;
+	private MappedFile spareEnergies;
+	// back pointer of each buffer cell: -1, 0 or +1 columns to the seam's pixel in the row above
+	private final MappedFile lastEdge;
+	private int rows;
+	private int cols;
+	private int stride;
+	private boolean transposed;
+	// distances of the previous and the current row of the seam search
+	private double[] distTo;
+	private double[] nextDistTo;
+
+	// streaming seam carver for a picture, with the dual-gradient energy
+	public StreamingSeamCarver(Picture picture) throws IOException {
+		this(picture, EnergyFunction.DUAL_GRADIENT);
+	}
+
+	public StreamingSeamCarver(Picture picture, EnergyFunction energyFunction) throws IOException {
+		this(picture.width(), picture.height(), energyFunction);
+		try {
+			for (int r = 0; r < rows; r++) {
+				for (int c = 0; c < cols; c++) {
+					pixels.putInt(offset(r, c), picture.get(c, r).getRGB() & 0xffffff);
+				}
+			}
+			computeEnergies();
+		} catch (RuntimeException e) {
+			closeAll(e, pixels, energies, sparePixels, spareEnergies, lastEdge);
+			throw e;
+		}
+	}
+
+	// streaming seam carver for a width x height picture stored as big-endian packed RGB ints,
+	// row by row, as written by writePixels; the file itself is not modified
+	public StreamingSeamCarver(String pixelFile, int width, int height, EnergyFunction energyFunction)
+			throws IOException {
+		this(width, height, energyFunction);
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(pixelFile), 1 << 16));
+			for (int r = 0; r < rows; r++) {
+				for (int c = 0; c < cols; c++) {
+					pixels.putInt(offset(r, c), in.readInt() & 0xffffff);
+				}
+			}
+			computeEnergies();
+		} catch (IOException | RuntimeException e) {
+			// the carver is never returned, so delete its files here
+			closeAll(e, pixels, energies, sparePixels, spareEnergies, lastEdge);
+			throw e;
+		} finally {
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+
+	private StreamingSeamCarver(int width, int height, EnergyFunction energyFunction) throws IOException {
+		if (energyFunction == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("picture must not be empty");
+		}
+		this.energyFunction = energyFunction;
+		rows = height;
+		cols = width;
+		stride = width;
+		long size = (long) width * height;
+		try {
+			pixels = MappedFile.temporary(4 * size);
+			energies = MappedFile.temporary(4 * size);
+			sparePixels = MappedFile.temporary(4 * size);
+			spareEnergies = MappedFile.temporary(4 * size);
+			lastEdge = MappedFile.temporary(size);
+		} catch (IOException | RuntimeException e) {
+			// delete the files opened before the failure
+			closeAll(e, pixels, energies, sparePixels, spareEnergies);
+			throw e;
+		}
+		distTo = new double[Math.max(width, height)];
+		nextDistTo = new double[distTo.length];
+	}
+
+	// byte offset of the int at buffer row r, column c
+	private long offset(int r, int c) {
+		return 4 * ((long) r * stride + c);
+	}
+
+	public int width() {
+		return transposed ? rows : cols;
+	}
+
+	public int height() {
+		return transposed ? cols : rows;
+	}
+
+	// energy of pixel at column x and row y
+	public double energy(int x, int y) {
+		if (x < 0 || x >= width() || y < 0 || y >= height()) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (!transposed) {
+			return energies.getInt(offset(y, x));
+		}
+		if (energyFunction.symmetric()) {
+			return energies.getInt(offset(x, y));
+		}
+		// the transposed buffers hold the energies for horizontal seams; as in SeamCarver,
+		// compute the energy from the pixel's neighbourhood turned back to picture orientation
+		int top = Math.max(y - 1, 0);
+		int bottom = Math.min(y + 2, height());
+		int left = Math.max(x - 1, 0);
+		int right = Math.min(x + 2, width());
+		int width = right - left;
+		int[] window = new int[(bottom - top) * width];
+		for (int wy = top; wy < bottom; wy++) {
+			for (int wx = left; wx < right; wx++) {
+				window[(wy - top) * width + wx - left] = pixels.getInt(offset(wx, wy));
+			}
+		}
+		return energyFunction.energy(window, width, bottom - top, width, y - top, x - left);
+	}
+
+	// current picture; it is built in the heap
+	public Picture picture() {
+		Picture picture = new Picture(width(), height());
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				Color color = new Color(pixels.getInt(offset(r, c)));
+				if (transposed) {
+					picture.set(r, c, color);
+				} else {
+					picture.set(c, r, color);
+				}
+			}
+		}
+		return picture;
+	}
+
+	// write the current picture as big-endian packed RGB ints, row by row
+	public void writePixels(String filename) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		try {
+			for (int y = 0; y < height(); y++) {
+				for (int x = 0; x < width(); x++) {
+					out.writeInt(transposed ? pixels.getInt(offset(x, y)) : pixels.getInt(offset(y, x)));
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// rows of the buffer loaded into the heap at a time
+	private int bandRows() {
+		return Math.max(1, BAND_PIXELS / cols);
+	}
+
+	// copy buffer rows from .. to - 1 of file into band, packed with stride = cols
+	private void readRows(MappedFile file, int from, int to, int[] band) {
+		for (int r = from; r < to; r++) {
+			long start = offset(r, 0);
+			int base = (r - from) * cols;
+			for (int c = 0; c < cols; c++) {
+				band[base + c] = file.getInt(start + 4L * c);
+			}
+		}
+	}
+
+	// compute every energy, one band of rows at a time. each band is loaded with the row above
+	// and the row below it, so the energy function sees the true picture borders and nothing else
+	private void computeEnergies() {
+		int bandRows = bandRows();
+		int[] band = new int[(bandRows + 2) * cols];
+		int[] bandEnergies = new int[band.length];
+		for (int r0 = 0; r0 < rows; r0 += bandRows) {
+			int r1 = Math.min(r0 + bandRows, rows);
+			int from = Math.max(r0 - 1, 0);
+			int to = Math.min(r1 + 1, rows);
+			readRows(pixels, from, to, band);
+			for (int r = r0; r < r1; r++) {
+				energyFunction.energies(band, cols, to - from, cols, r - from, bandEnergies);
+				long start = offset(r, 0);
+				int base = (r - from) * cols;
+				for (int c = 0; c < cols; c++) {
+					energies.putInt(start + 4L * c, bandEnergies[base + c]);
+				}
+			}
+		}
+	}
+
+	// sequence of indices for horizontal seam
+	public int[] findHorizontalSeam() {
+		orient(true);
+		return findVerticalSP();
+	}
+
+	// sequence of indices for vertical seam
+	public int[] findVerticalSeam() {
+		orient(false);
+		return findVerticalSP();
+	}
+
+	// transpose the buffers tile by tile into the spare files, if they are not in the
+	// requested orientation
+	private void orient(boolean transpose) {
+		if (transposed == transpose) {
+			return;
+		}
+		boolean symmetric = energyFunction.symmetric();
+		for (int tileR = 0; tileR < rows; tileR += TILE) {
+			for (int tileC = 0; tileC < cols; tileC += TILE) {
+				for (int r = tileR; r < Math.min(tileR + TILE, rows); r++) {
+					for (int c = tileC; c < Math.min(tileC + TILE, cols); c++) {
+						long to = 4 * ((long) c * rows + r);
+						sparePixels.putInt(to, pixels.getInt(offset(r, c)));
+						if (symmetric) {
+							spareEnergies.putInt(to, energies.getInt(offset(r, c)));
+						}
+					}
+				}
+			}
+		}
+		MappedFile swapFile = pixels;
+		pixels = sparePixels;
+		sparePixels = swapFile;
+		swapFile = energies;
+		energies = spareEnergies;
+		spareEnergies = swapFile;
+		int swap = rows;
+		rows = cols;
+		cols = swap;
+		stride = cols;
+		transposed = transpose;
+		if (!symmetric) {
+			computeEnergies();
+		}
+	}
+
+	// vertical seam of the buffer, with the ties broken as in SeamCarver
+	private int[] findVerticalSP() {
+		int bandRows = bandRows();
+		int[] band = new int[bandRows * cols];
+		// with edge costs, the pixels of the band and the row above it
+		boolean edgeCosts = energyFunction.hasEdgeCosts();
+		int[] pixelBand = edgeCosts ? new int[(bandRows + 1) * cols] : null;
+		for (int r0 = 0; r0 < rows; r0 += bandRows) {
+			int r1 = Math.min(r0 + bandRows, rows);
+			readRows(energies, r0, r1, band);
+			int from = Math.max(r0 - 1, 0);
+			if (edgeCosts) {
+				readRows(pixels, from, r1, pixelBand);
+			}
+			for (int r = r0; r < r1; r++) {
+				int base = (r - r0) * cols;
+				if (r == 0) {
+					for (int c = 0; c < cols; c++) {
+						distTo[c] = band[c];
+					}
+					continue;
+				}
+				long edges = (long) r * stride;
+				for (int c = 0; c < cols; c++) {
+					double best = distTo[c] + edgeCost(pixelBand, r1 - from, r - from, c, 0);
+					byte edge = 0;
+					if (c > 0) {
+						double upperLeft = distTo[c - 1] + edgeCost(pixelBand, r1 - from, r - from, c, -1);
+						if (upperLeft <= best) {
+							best = upperLeft;
+							edge = -1;
+						}
+					}
+					if (c < cols - 1) {
+						double upperRight = distTo[c + 1] + edgeCost(pixelBand, r1 - from, r - from, c, 1);
+						if (upperRight < best) {
+							best = upperRight;
+							edge = 1;
+						}
+					}
+					nextDistTo[c] = best + band[base + c];
+					lastEdge.put(edges + c, edge);
+				}
+				double[] swap = distTo;
+				distTo = nextDistTo;
+				nextDistTo = swap;
+			}
+		}
+
+		int selectedC = Integer.MAX_VALUE;
+		double shortestDist = Double.MAX_VALUE;
+		for (int c = 0; c < cols; c++) {
+			if (Double.compare(distTo[c], shortestDist) < 1) {
+				selectedC = c;
+				shortestDist = distTo[c];
+			}
+		}
+		int[] path = new int[rows];
+		int prevCol = selectedC;
+		for (int r = rows - 1; r >= 0; r--) {
+			path[r] = prevCol;
+			if (r > 0) {
+				prevCol += lastEdge.get((long) r * stride + prevCol);
+			}
+		}
+		return path;
+	}
+
+	// edge cost into band row r, column c; 0 when the energy function has none
+	private int edgeCost(int[] pixelBand, int bandRows, int r, int c, int edge) {
+		return pixelBand == null ? 0 : energyFunction.edgeCost(pixelBand, cols, bandRows, cols, r, c, edge);
+	}
+
+	// remove horizontal seam from current picture
+	public void removeHorizontalSeam(int[] seam) {
+		validateRemovalArg(seam, width(), height());
+		orient(true);
+		removeVerticalSP(seam);
+	}
+
+	// remove vertical seam from current picture
+	public void removeVerticalSeam(int[] seam) {
+		validateRemovalArg(seam, height(), width());
+		orient(false);
+		removeVerticalSP(seam);
+	}
+
+	private void removeVerticalSP(int[] seam) {
+		// shift the pixels and energies right of the seam left a column
+		cols--;
+		for (int r = 0; r < rows; r++) {
+			for (int c = seam[r]; c < cols; c++) {
+				pixels.putInt(offset(r, c), pixels.getInt(offset(r, c + 1)));
+				energies.putInt(offset(r, c), energies.getInt(offset(r, c + 1)));
+			}
+		}
+
+		// recompute the energies within reach of the seam. the energy of a pixel only reads its
+		// 3x3 neighbourhood, so each row loads a window of the rows around it, one column wider
+		// on each side than the columns it recomputes. window edges that are not picture
+		// borders are never the centre of a recomputed pixel
+		int reach = energyFunction.reach();
+		int[] window = new int[3 * (2 * reach + 2)];
+		for (int r = 0; r < rows; r++) {
+			int lo = Math.max(seam[r] - reach, 0);
+			int hi = Math.min(seam[r] + reach, cols);
+			int top = Math.max(r - 1, 0);
+			int bottom = Math.min(r + 2, rows);
+			int left = Math.max(lo - 1, 0);
+			int width = Math.min(hi + 1, cols) - left;
+			for (int wr = top; wr < bottom; wr++) {
+				for (int c = 0; c < width; c++) {
+					window[(wr - top) * width + c] = pixels.getInt(offset(wr, left + c));
+				}
+			}
+			for (int c = lo; c < hi; c++) {
+				energies.putInt(offset(r, c), energyFunction.energy(window, width, bottom - top, width, r - top, c - left));
+			}
+		}
+	}
+
+	// seam must have one entry per row of length rows, in a picture more than 1 wide, with
+	// every entry a column of it and adjacent entries at most 1 apart
+	private void validateRemovalArg(int[] seam, int length, int width) {
+		if (seam == null) {
+			throw new NullPointerException("arg cannot be null");
+		}
+		if (seam.length != length || width <= 1) {
+			throw new IllegalArgumentException("arg array has invalid size");
+		}
+		for (int i = 0; i < seam.length; i++) {
+			if (seam[i] < 0 || seam[i] >= width) {
+				throw new IllegalArgumentException("entry out of range");
+			}
+			if (i > 0 && Math.abs(seam[i] - seam[i - 1]) > 1) {
+				throw new IllegalArgumentException("adjacent entries differ by more than 1");
+			}
+		}
+	}
+
+	// release and delete the mapped files
+	@Override
+	public void close() throws IOException {
+		closeAll(null, pixels, energies, sparePixels, spareEnergies, lastEdge);
+	}
+
+	// close every file that is open, even if closing one fails. the first failure is added to
+	// cause if there is one, and thrown otherwise
+	private static void closeAll(Exception cause, MappedFile... files) throws IOException {
+		IOException failure = null;
+		for (MappedFile file : files) {
+			if (file == null) {
+				continue;
+			}
+			try {
+				file.close();
+			} catch (IOException e) {
+				if (cause != null) {
+					cause.addSuppressed(e);
+				} else if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
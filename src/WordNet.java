@@ -1,57 +1,94 @@
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class WordNet {
 	private static String DELIM_COMMA = ",";
 	private static String DELIM_SPACE = " ";
-	private Map<String, Set<Integer>> synsetDict = new HashMap<String, Set<Integer>>();
-	private List<String> synsetCol = new ArrayList<String>();
-	private Digraph g;
-	private SAP sap;
+	private static int CACHE_CAPACITY = 1 << 16;
+	// noun pairs below this many are looked up on the calling thread
+	private static int BATCH_THRESHOLD = 32;
+	// everything queries read. updates build a new State and publish it with one write, so a
+	// query that has read the field sees a consistent WordNet however long it runs
+	private volatile State state;
 
 	// constructor takes the name of the two input files
 	public WordNet(String synsets, String hypernyms) {
 		validateArgsNPE(synsets, hypernyms);
 		In synsetIn = new In(synsets);
+		List<String> synsetList = new ArrayList<String>();
+		NounDictionary.Builder dictBuilder = new NounDictionary.Builder();
 		int V = 0;
 		while (synsetIn.hasNextLine()) {
 			V++;
 			String line = synsetIn.readLine();
 			String[] splitted = line.split(DELIM_COMMA);
 			int id = Integer.parseInt(splitted[0]);
-			synsetCol.add(splitted[1]);
+			synsetList.add(splitted[1]);
 			String[] nouns = splitted[1].split(DELIM_SPACE);
 			for (String noun : nouns) {
-				if (!synsetDict.containsKey(noun)) {
-					synsetDict.put(noun, new HashSet<Integer>());
-				}
-				synsetDict.get(noun).add(id);
+				dictBuilder.add(noun, id);
 			}
 		}
+		NounDictionary synsetDict = dictBuilder.build();
+		PackedStrings synsetCol = new PackedStrings(synsetList.toArray(new String[synsetList.size()]));
 
-		g = new Digraph(V);
+		// collect the edges first and build the read-only graph in one go
+		int[] tails = new int[V];
+		int[] heads = new int[V];
+		int E = 0;
 		In hypernymsIn = new In(hypernyms);
 		while (hypernymsIn.hasNextLine()) {
 			String[] splitted = hypernymsIn.readLine().split(DELIM_COMMA);
 			int focalSID = Integer.parseInt(splitted[0]);
 			for (int i = 1; i < splitted.length; i++) {
 				int hypernymId = Integer.parseInt(splitted[i]);
-				g.addEdge(focalSID, hypernymId);
+				if (E == tails.length) {
+					tails = Arrays.copyOf(tails, 2 * E + 1);
+					heads = Arrays.copyOf(heads, 2 * E + 1);
+				}
+				tails[E] = focalSID;
+				heads[E] = hypernymId;
+				E++;
 			}
 		}
+		CompactDigraph g = new CompactDigraph(V, tails, heads, E);
 		validateDAG(g);
-		sap = new SAP(g);
+		// noun lookups are heavily skewed, so keep the most frequently asked pairs
+		state = new State(synsetDict, synsetCol, g, g.reverse(), new SAP(g),
+				new QueryCache(CACHE_CAPACITY, SAP.CacheEviction.LFU));
+	}
+
+	// wraps an already validated WordNet, see load
+	private WordNet(WordNetSnapshot snapshot) {
+		CompactDigraph g = snapshot.graph();
+		state = new State(snapshot.dictionary(), snapshot.synsets(), g, g.reverse(), new SAP(g),
+				new QueryCache(CACHE_CAPACITY, SAP.CacheEviction.LFU));
+	}
+
+	// write the nouns, synsets and hypernym graph to a binary file that load can map back in
+	public void save(String filename) throws IOException {
+		validateArgsNPE(filename);
+		State s = state;
+		WordNetSnapshot.write(filename, s.g, s.synsetCol, s.synsetDict);
 	}
 
-	private void validateDAG(Digraph g2) throws IllegalArgumentException {
+	// WordNet from a file written by save; the graph is not validated again
+	public static WordNet load(String filename) throws IOException {
+		if (filename == null) {
+			throw new NullPointerException("Arg cannot be null");
+		}
+		return new WordNet(WordNetSnapshot.read(filename));
+	}
+
+	private void validateDAG(CompactDigraph g2) throws IllegalArgumentException {
 
 		int root = -1;
 		for (int v = 0; v < g2.V(); v++) {
-			if (((Bag<Integer>) g2.adj(v)).size() == 0) {
+			if (g2.outdegree(v) == 0) {
 				if (root != -1)
 					throw new IllegalArgumentException("Not DAG- more than 1 root!");
 				else
@@ -59,57 +96,340 @@ public class WordNet {
 			}
 		}
 
-		DirectedCycle cycle = new DirectedCycle(g2);
-		if (cycle.hasCycle()) {
+		if (g2.hasCycle()) {
+			throw new IllegalArgumentException("Not DAG- graph has cycle!");
+		}
+
+	}
+
+	// precompute ancestor labels for synsets with at most maxLabelSize ancestors, so that
+	// distance and sap merge two small arrays instead of searching the graph; returns the
+	// bytes used by the index
+	public synchronized long buildAncestorIndex(int maxLabelSize) {
+		SAP sap = state.sap;
+		sap.buildLabelIndex(maxLabelSize);
+		return sap.labelIndexBytes();
+	}
+
+	// add a synset (second field of synsets.txt) below the given hypernyms and return its id.
+	// at least one hypernym is needed, since the WordNet has exactly one root
+	public synchronized int addSynset(String synset, int... hypernyms) {
+		validateArgsNPE(synset, hypernyms);
+		if (hypernyms.length == 0) {
+			throw new IllegalArgumentException("Not DAG- new synset would be a second root!");
+		}
+		State s = state;
+		for (int hypernym : hypernyms) {
+			validateSynset(s, hypernym);
+		}
+		int id = s.g.V();
+		// nothing points to the new synset yet, so it cannot close a cycle and
+		// no existing distance changes
+		CompactDigraph g = s.g.withVertex(hypernyms);
+		int[] ids = new int[hypernyms.length];
+		Arrays.fill(ids, id);
+		CompactDigraph reverse = s.reverse.withVertex(new int[0]).withEdges(hypernyms, ids, hypernyms.length);
+		NounDictionary synsetDict = s.synsetDict.with(synset.split(DELIM_SPACE), id);
+		PackedStrings synsetCol = s.synsetCol.with(new String[] { synset }, 1);
+		// the nouns of the new synset now have one more synset to start from
+		boolean[] changed = new boolean[synsetDict.size()];
+		for (String noun : synset.split(DELIM_SPACE)) {
+			changed[synsetDict.indexOf(noun)] = true;
+		}
+		state = new State(synsetDict, synsetCol, g, reverse, s.sap.updated(g, new boolean[id]),
+				s.cache.without(changed));
+		return id;
+	}
+
+	// add the hypernym edge synset -> hypernym
+	public synchronized void addHypernym(int synset, int hypernym) {
+		State s = state;
+		validateSynset(s, synset);
+		validateSynset(s, hypernym);
+		if (s.g.hasEdge(synset, hypernym)) {
+			return;
+		}
+		// the edge closes a cycle iff synset is already an ancestor of hypernym; only the
+		// ancestors of hypernym are searched
+		if (synset == hypernym || s.g.reaches(hypernym, synset)) {
+			throw new IllegalArgumentException("Not DAG- graph has cycle!");
+		}
+		CompactDigraph g = s.g.withEdge(synset, hypernym);
+		// only the distances from synset and its descendants can change; they are found
+		// through the reverse edges, which the new edge does not add to
+		boolean[] affected = s.reverse.reachable(new int[] { synset }, 1);
+		CompactDigraph reverse = s.reverse.withEdge(hypernym, synset);
+		state = new State(s.synsetDict, s.synsetCol, g, reverse, s.sap.updated(g, affected),
+				s.cache.without(nounsOf(s.synsetDict, affected)));
+	}
+
+	// add the hypernym edges synsets[i] -> hypernyms[i] as one update: the graph, the search
+	// for affected synsets and the cache are rebuilt once for the whole batch instead of once
+	// per edge. if an edge would close a cycle with the graph and the edges before it, none of
+	// them is added
+	public synchronized void addHypernyms(int[] synsets, int[] hypernyms) {
+		validateArgsNPE(synsets, hypernyms);
+		if (synsets.length != hypernyms.length) {
+			throw new IllegalArgumentException("edge arrays differ in length");
+		}
+		State s = state;
+		for (int i = 0; i < synsets.length; i++) {
+			validateSynset(s, synsets[i]);
+			validateSynset(s, hypernyms[i]);
+		}
+		if (s.g.firstCycle(synsets, hypernyms, synsets.length) != -1) {
 			throw new IllegalArgumentException("Not DAG- graph has cycle!");
 		}
+		CompactDigraph g = s.g.withEdges(synsets, hypernyms, synsets.length);
+		if (g.E() == s.g.E()) {
+			return;
+		}
+		// only the distances from the new edges' tails and their descendants can change
+		boolean[] affected = s.reverse.reachable(synsets, synsets.length);
+		CompactDigraph reverse = s.reverse.withEdges(hypernyms, synsets, synsets.length);
+		state = new State(s.synsetDict, s.synsetCol, g, reverse, s.sap.updated(g, affected),
+				s.cache.without(nounsOf(s.synsetDict, affected)));
+	}
 
+	// the nouns that belong to an affected synset
+	private static boolean[] nounsOf(NounDictionary synsetDict, boolean[] affected) {
+		boolean[] nouns = new boolean[synsetDict.size()];
+		int[] ids = synsetDict.ids();
+		for (int i = 0; i < nouns.length; i++) {
+			for (int k = synsetDict.idStart(i); k < synsetDict.idEnd(i) && !nouns[i]; k++) {
+				nouns[i] = affected[ids[k]];
+			}
+		}
+		return nouns;
 	}
 
 	// returns all WordNet nouns
 	public Iterable<String> nouns() {
-		return synsetDict.keySet();
+		return state.synsetDict.nouns();
 	}
 
 	// is the word a WordNet noun?
 	public boolean isNoun(String word) {
 		validateArgsNPE(word);
-		return synsetDict.keySet().contains(word);
+		return state.synsetDict.indexOf(word) != -1;
 	}
 
 	// distance between nounA and nounB (defined below)
 	public int distance(String nounA, String nounB) {
-		validateArgs(nounA, nounB);
-		Set<Integer> aSynsets = synsetDict.get(nounA);
-		Set<Integer> bSynsets = synsetDict.get(nounB);
-		return sap.length(aSynsets, bSynsets);
+		validateArgsNPE(nounA, nounB);
+		State s = state;
+		int a = s.synsetDict.indexOf(nounA);
+		int b = s.synsetDict.indexOf(nounB);
+		validateNouns(a, b);
+		return distance(s, a, b);
+	}
+
+	// packed SAP result for the nouns numbered a and b in the dictionary, cached on the pair
+	private static long search(State s, int a, int b) {
+		long key = QueryCache.key(a, b);
+		long result = s.cache.get(key);
+		if (result == QueryCache.MISS) {
+			result = uncachedSearch(s, a, b);
+			s.cache.put(key, result);
+		}
+		return result;
+	}
+
+	// distance between the nouns numbered a and b in the dictionary
+	private static int distance(State s, int a, int b) {
+		return SAP.length(search(s, a, b));
+	}
+
+	// packed SAP result searched without consulting or filling the cache
+	private static long uncachedSearch(State s, int a, int b) {
+		NounDictionary synsetDict = s.synsetDict;
+		int[] ids = synsetDict.ids();
+		return s.sap.search(ids, synsetDict.idStart(a), synsetDict.idEnd(a), ids, synsetDict.idStart(b),
+				synsetDict.idEnd(b));
 	}
 
 	// a synset (second field of synsets.txt) that is the common ancestor of nounA and nounB
 	// in a shortest ancestral path (defined below)
 	public String sap(String nounA, String nounB) {
-		validateArgs(nounA, nounB);
-		Set<Integer> aSynsets = synsetDict.get(nounA);
-		Set<Integer> bSynsets = synsetDict.get(nounB);
-		int ancestorId = sap.ancestor(aSynsets, bSynsets);
-		return synsetCol.get(ancestorId);
+		State s = state;
+		return s.synsetCol.get(SAP.ancestor(search(s, nounA, nounB)));
 	}
 
-	private void validateArgsNPE(String... strings) throws NullPointerException {
-		for (String s : strings) {
+	// distance and common ancestor synset id of nounA and nounB from one SAP query;
+	// use synset(id) for the synset itself
+	public SAP.AncestralPath ancestralPath(String nounA, String nounB) {
+		return new SAP.AncestralPath(search(state, nounA, nounB));
+	}
+
+	private long search(State s, String nounA, String nounB) {
+		validateArgsNPE(nounA, nounB);
+		NounDictionary synsetDict = s.synsetDict;
+		int a = synsetDict.indexOf(nounA);
+		int b = synsetDict.indexOf(nounB);
+		validateNouns(a, b);
+		return search(s, a, b);
+	}
+
+	// distances between nounsA[i] and nounsB[i] for every i, computed in parallel
+	public int[] distances(String[] nounsA, String[] nounsB) {
+		validateArgsNPE(nounsA, nounsB);
+		if (nounsA.length != nounsB.length) {
+			throw new IllegalArgumentException("noun arrays differ in length");
+		}
+		State s = state;
+		return distances(s, indexesOf(s, nounsA), indexesOf(s, nounsB));
+	}
+
+	// distances between the nouns numbered a[i] and b[i]. the cache is read for every pair
+	// before the searches fork and filled with the misses after they join, so the workers
+	// never wait on its lock
+	private static int[] distances(State s, int[] a, int[] b) {
+		long[] results = new long[a.length];
+		int[] misses = new int[a.length];
+		int n = 0;
+		for (int i = 0; i < a.length; i++) {
+			results[i] = s.cache.get(QueryCache.key(a[i], b[i]));
+			if (results[i] == QueryCache.MISS) {
+				misses[n++] = i;
+			}
+		}
+		ForkJoinPool.commonPool().invoke(new SearchTask(s, a, b, misses, results, 0, n));
+		for (int k = 0; k < n; k++) {
+			s.cache.put(QueryCache.key(a[misses[k]], b[misses[k]]), results[misses[k]]);
+		}
+		int[] distances = new int[a.length];
+		for (int i = 0; i < a.length; i++) {
+			distances[i] = SAP.length(results[i]);
+		}
+		return distances;
+	}
+
+	// dictionary numbers of the nouns
+	private int[] indexesOf(State s, String[] nouns) {
+		int[] indexes = new int[nouns.length];
+		for (int i = 0; i < nouns.length; i++) {
+			validateArgsNPE(nouns[i]);
+			indexes[i] = s.synsetDict.indexOf(nouns[i]);
+			validateNouns(indexes[i], indexes[i]);
+		}
+		return indexes;
+	}
+
+	// symmetric matrix of the distances between all pairs of nouns, each pair computed once
+	public int[][] distanceMatrix(String[] nouns) {
+		if (nouns == null) {
+			throw new NullPointerException("Arg cannot be null");
+		}
+		State s = state;
+		int[] indexes = indexesOf(s, nouns);
+		int n = nouns.length;
+		int[] a = new int[n * (n - 1) / 2];
+		int[] b = new int[a.length];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				a[k] = indexes[i];
+				b[k] = indexes[j];
+				k++;
+			}
+		}
+		int[] distances = distances(s, a, b);
+		int[][] matrix = new int[n][n];
+		k = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				matrix[i][j] = distances[k];
+				matrix[j][i] = distances[k];
+				k++;
+			}
+		}
+		return matrix;
+	}
+
+	// splits a range of the missed noun pairs until it is small enough to search serially.
+	// each worker thread searches with its own SAP workspace and writes only its own slots
+	// of results
+	private static class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final State state;
+		private final int[] nounsA;
+		private final int[] nounsB;
+		private final int[] pairs;
+		private final long[] results;
+		private final int lo;
+		private final int hi;
+
+		private SearchTask(State state, int[] nounsA, int[] nounsB, int[] pairs, long[] results, int lo, int hi) {
+			this.state = state;
+			this.nounsA = nounsA;
+			this.nounsB = nounsB;
+			this.pairs = pairs;
+			this.results = results;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= BATCH_THRESHOLD) {
+				for (int k = lo; k < hi; k++) {
+					int i = pairs[k];
+					results[i] = uncachedSearch(state, nounsA[i], nounsB[i]);
+				}
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new SearchTask(state, nounsA, nounsB, pairs, results, lo, mid),
+					new SearchTask(state, nounsA, nounsB, pairs, results, mid, hi));
+		}
+	}
+
+	// the synset (second field of synsets.txt) with the given id
+	public String synset(int id) {
+		return state.synsetCol.get(id);
+	}
+
+	private static class State {
+		private final NounDictionary synsetDict;
+		private final PackedStrings synsetCol;
+		private final CompactDigraph g;
+		// g with every edge reversed, kept up to date with it to find descendants
+		private final CompactDigraph reverse;
+		private final SAP sap;
+		// results of earlier queries, keyed on the pair of noun numbers
+		private final QueryCache cache;
+
+		private State(NounDictionary synsetDict, PackedStrings synsetCol, CompactDigraph g, CompactDigraph reverse,
+				SAP sap, QueryCache cache) {
+			this.synsetDict = synsetDict;
+			this.synsetCol = synsetCol;
+			this.g = g;
+			this.reverse = reverse;
+			this.sap = sap;
+			this.cache = cache;
+		}
+	}
+
+	private void validateArgsNPE(Object... objects) throws NullPointerException {
+		for (Object s : objects) {
 			if (s == null) {
 				throw new NullPointerException("Arg cannot be null");
 			}
 		}
 	}
 
-	private void validateArgs(String s1, String s2) throws NullPointerException, IllegalArgumentException {
-		validateArgsNPE(s1, s2);
-		if (!isNoun(s1) || !isNoun(s2)) {
+	private void validateNouns(int a, int b) throws IllegalArgumentException {
+		if (a == -1 || b == -1) {
 			throw new IllegalArgumentException("At least one of the words is not a WordNet noun");
 		}
 	}
 
+	private void validateSynset(State s, int id) throws IllegalArgumentException {
+		if (id < 0 || id >= s.g.V()) {
+			throw new IllegalArgumentException("synset id " + id + " is not between 0 and " + (s.g.V() - 1));
+		}
+	}
+
 	// do unit testing of this class
 	public static void main(String[] args) {
 
@@ -0,0 +1,152 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// binary image of a loaded WordNet. all sections are length-prefixed arrays of big-endian ints,
+// strings are stored as one UTF-8 byte block plus an int[] of offsets into it:
+//   magic, version
+//   graph:      V, E, offsets[V + 1], targets[E]
+//   synsets:    count, byte offsets[count + 1], byte count, bytes
+//   dictionary: count, byte offsets[count + 1], byte count, bytes,
+//               table size, hash table, id offsets[count + 1], id count, ids
+// the file is memory-mapped. the int sections are copied out in bulk, since the graph and the
+// dictionary are read as int[] by every query; the strings stay in the mapping and are decoded
+// one by one when first used. nothing is parsed, hashed or validated: the dictionary's hash
+// table is stored as is, which relies on String.hashCode being the same in every JVM
+class WordNetSnapshot {
+	private static final int MAGIC = 0x574e4554; // "WNET"
+	private static final int VERSION = 2;
+
+	private final CompactDigraph graph;
+	private final PackedStrings synsets;
+	private final NounDictionary dictionary;
+
+	private WordNetSnapshot(CompactDigraph graph, PackedStrings synsets, NounDictionary dictionary) {
+		this.graph = graph;
+		this.synsets = synsets;
+		this.dictionary = dictionary;
+	}
+
+	public CompactDigraph graph() {
+		return graph;
+	}
+
+	public PackedStrings synsets() {
+		return synsets;
+	}
+
+	public NounDictionary dictionary() {
+		return dictionary;
+	}
+
+	public static void write(String filename, CompactDigraph graph, List<String> synsets, NounDictionary dictionary)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(graph.V());
+			out.writeInt(graph.E());
+			for (int v = 0; v <= graph.V(); v++) {
+				out.writeInt(v == graph.V() ? graph.E() : graph.adjStart(v));
+			}
+			for (int e = 0; e < graph.E(); e++) {
+				out.writeInt(graph.target(e));
+			}
+
+			writeStrings(out, synsets);
+
+			writeStrings(out, dictionary.nouns());
+			writeInts(out, dictionary.table());
+			for (int offset : dictionary.idOffsets()) {
+				out.writeInt(offset);
+			}
+			writeInts(out, dictionary.ids());
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+		out.writeInt(ints.length);
+		for (int i : ints) {
+			out.writeInt(i);
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+		byte[][] encoded = new byte[strings.size()][];
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+		}
+		out.writeInt(encoded.length);
+		int offset = 0;
+		out.writeInt(offset);
+		for (byte[] bytes : encoded) {
+			offset += bytes.length;
+			out.writeInt(offset);
+		}
+		out.writeInt(offset);
+		for (byte[] bytes : encoded) {
+			out.write(bytes);
+		}
+	}
+
+	public static WordNetSnapshot read(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IllegalArgumentException(filename + " is not a WordNet snapshot");
+			}
+
+			int V = buffer.getInt();
+			int E = buffer.getInt();
+			int[] offsets = readInts(buffer, V + 1);
+			int[] targets = readInts(buffer, E);
+			CompactDigraph graph = new CompactDigraph(offsets, targets);
+
+			PackedStrings synsets = readStrings(buffer);
+
+			PackedStrings nouns = readStrings(buffer);
+			int[] table = readInts(buffer, buffer.getInt());
+			int[] idOffsets = readInts(buffer, nouns.size() + 1);
+			int[] ids = readInts(buffer, buffer.getInt());
+			NounDictionary dictionary = new NounDictionary(nouns, table, idOffsets, ids);
+			return new WordNetSnapshot(graph, synsets, dictionary);
+		} finally {
+			file.close();
+		}
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int count) {
+		int[] ints = new int[count];
+		IntBuffer view = buffer.asIntBuffer();
+		view.get(ints);
+		buffer.position(buffer.position() + 4 * count);
+		return ints;
+	}
+
+	// views of a string section's offsets and bytes, which stay in the mapping
+	private static PackedStrings readStrings(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		IntBuffer offsets = buffer.asIntBuffer();
+		offsets.limit(count + 1);
+		buffer.position(buffer.position() + 4 * (count + 1));
+		int length = buffer.getInt();
+		ByteBuffer bytes = buffer.slice();
+		bytes.limit(length);
+		buffer.position(buffer.position() + length);
+		return new PackedStrings(bytes, offsets, count);
+	}
+}